@@ -23,7 +23,16 @@ public enum AisField {
 	LATITUDE(8),
 	COURSE_OVER_GROUND(9),
 	TRUE_HEADING(10),
-	UTC_SECOND(11);
+	UTC_SECOND(11),
+	PART_NUMBER(12),
+	CALL_SIGN(13),
+	VESSEL_NAME(14),
+	SHIP_TYPE(15),
+	YEAR(16),
+	MONTH(17),
+	DAY(18),
+	HOUR(19),
+	MINUTE(20);
 
 	private int index;
 
@@ -0,0 +1,137 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.mapper;
+
+import eu.europa.ec.fisheries.uvms.plugins.ais.service.Conversion;
+
+/**
+ * Unpacks an armored AIS payload into a bit buffer once and reads fields with shifts and masks.
+ */
+public class AisBitBuffer {
+
+    private static final int BITS_PER_SYMBOL = 6;
+
+    private final long[] words;
+    private final int bitLength;
+
+    public AisBitBuffer(String payload) {
+        int symbols = payloadLength(payload);
+        bitLength = symbols * BITS_PER_SYMBOL;
+        words = new long[(bitLength + 63) >>> 6];
+        for (int i = 0; i < symbols; i++) {
+            append(i * BITS_PER_SYMBOL, dearmor(payload.charAt(i)));
+        }
+    }
+
+    /**
+     * Reads the message type from the first symbol of an armored payload without unpacking it.
+     *
+     * @return the message type, or -1 if the payload does not start with a valid symbol
+     */
+    public static int peekMessageType(String payload) {
+        if (payload == null || payload.isEmpty()) {
+            return -1;
+        }
+        return Conversion.getSixBitValueForSymbol(payload.charAt(0));
+    }
+
+    /**
+     * Reads the 30 bit mmsi (bits 8-37) from the first seven symbols of an armored payload without unpacking it.
+     *
+     * @return the mmsi, or -1 if the payload is too short or contains invalid symbols
+     */
+    public static int peekMmsi(String payload) {
+        if (payload == null || payload.length() < 7) {
+            return -1;
+        }
+        long bits = 0;
+        for (int i = 0; i < 7; i++) {
+            int value = Conversion.getSixBitValueForSymbol(payload.charAt(i));
+            if (value < 0) {
+                return -1;
+            }
+            bits = (bits << BITS_PER_SYMBOL) | value;
+        }
+        // 42 bits read, the mmsi is followed by 4 bits of the next field
+        return (int) ((bits >>> 4) & 0x3FFFFFFF);
+    }
+
+    public int getBitLength() {
+        return bitLength;
+    }
+
+    public int getMessageType() {
+        return getUnsigned(0, 6);
+    }
+
+    public int getUnsigned(int start, int length) {
+        return (int) getBits(start, length);
+    }
+
+    public int getSigned(int start, int length) {
+        long bits = getBits(start, length);
+        return (int) ((bits << (64 - length)) >> (64 - length));
+    }
+
+    // decoder for six bit ascii, trailing '@' padding and spaces are removed
+    public String getString(int start, int length) {
+        int chars = length / BITS_PER_SYMBOL;
+        char[] text = new char[chars];
+        int len = 0;
+        for (int i = 0; i < chars; i++) {
+            int value = getUnsigned(start + i * BITS_PER_SYMBOL, BITS_PER_SYMBOL);
+            if (value != 0) {
+                text[len++] = Conversion.getAsciiForSixBitValue(value);
+            }
+        }
+        return new String(text, 0, len).trim();
+    }
+
+    private long getBits(int start, int length) {
+        if (start < 0 || length < 1 || length > 32 || start + length > bitLength) {
+            throw new IndexOutOfBoundsException("Bits " + start + "-" + (start + length) + " outside payload of " + bitLength + " bits");
+        }
+        int word = start >>> 6;
+        int offset = start & 63;
+        long bits = words[word] << offset;
+        if (offset + length > 64) {
+            bits |= words[word + 1] >>> (64 - offset);
+        }
+        return bits >>> (64 - length);
+    }
+
+    private void append(int position, int value) {
+        int word = position >>> 6;
+        int offset = position & 63;
+        int overflow = offset + BITS_PER_SYMBOL - 64;
+        if (overflow <= 0) {
+            words[word] |= (long) value << -overflow;
+        } else {
+            words[word] |= (long) value >>> overflow;
+            words[word + 1] |= (long) value << (64 - overflow);
+        }
+    }
+
+    // the payload ends at the first field separator, anything after it is fill bits and checksum
+    static int payloadLength(String payload) {
+        int end = payload.indexOf(',');
+        return end < 0 ? payload.length() : end;
+    }
+
+    private static int dearmor(char c) {
+        int value = Conversion.getSixBitValueForSymbol(c);
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid payload character: " + c);
+        }
+        return value;
+    }
+}
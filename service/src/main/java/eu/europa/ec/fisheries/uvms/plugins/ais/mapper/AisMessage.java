@@ -0,0 +1,63 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.mapper;
+
+import eu.europa.ec.fisheries.uvms.plugins.ais.constants.AisField;
+
+/**
+ * Field values of one AIS message decoded with an {@link AisMessageLayout}.
+ */
+public class AisMessage {
+
+    private final AisMessageLayout layout;
+    private final int[] values;
+    private final String[] texts;
+
+    AisMessage(AisMessageLayout layout, int[] values, String[] texts) {
+        this.layout = layout;
+        this.values = values;
+        this.texts = texts;
+    }
+
+    public AisMessageLayout getLayout() {
+        return layout;
+    }
+
+    public int getMessageType() {
+        return values[AisField.ID.getIndex()];
+    }
+
+    public int getMmsi() {
+        return values[AisField.MMSI.getIndex()];
+    }
+
+    public boolean hasField(AisField field) {
+        return layout.hasField(field);
+    }
+
+    // raw value of a numeric field, 0 if the field is not part of the message
+    public int getInt(AisField field) {
+        return values[field.getIndex()];
+    }
+
+    public Integer getInteger(AisField field) {
+        return hasField(field) ? values[field.getIndex()] : null;
+    }
+
+    public Double getDouble(AisField field) {
+        return layout.scale(field, values[field.getIndex()]);
+    }
+
+    public String getText(AisField field) {
+        return texts[field.getIndex()];
+    }
+}
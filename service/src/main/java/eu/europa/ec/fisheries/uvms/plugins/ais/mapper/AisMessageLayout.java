@@ -0,0 +1,262 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.mapper;
+
+import eu.europa.ec.fisheries.uvms.plugins.ais.constants.AisField;
+
+/**
+ * Bit layouts of the supported AIS messages, see http://catb.org/gpsd/AIVDM.html
+ * Supporting a new message type is a new entry here, decoding is done by a single loop over the table.
+ */
+public enum AisMessageLayout {
+
+    // message types 1, 2 and 3
+    CLASS_A_POSITION(
+            unsigned(AisField.ID, 0, 6),
+            unsigned(AisField.REPEAT_INDICATOR, 6, 2),
+            unsigned(AisField.MMSI, 8, 30),
+            unsigned(AisField.NAVIGATIONAL_STATUS, 38, 4),
+            signed(AisField.RATE_OF_TURN, 42, 8),
+            // speed 1023 is the error code, see http://emsa.europa.eu/cise-documentation/cise-data-model-1.5.3/model/guidelines/687507181.html
+            scaled(AisField.SPEED_OVER_GROUND, 50, 10, 10, 1023),
+            unsigned(AisField.POSITION_ACCURACY, 60, 1),
+            coordinate(AisField.LONGITUDE, 61, 28, 10000, 181),
+            coordinate(AisField.LATITUDE, 89, 27, 10000, 91),
+            scaled(AisField.COURSE_OVER_GROUND, 116, 12, 10),
+            unsigned(AisField.TRUE_HEADING, 128, 9),
+            unsigned(AisField.UTC_SECOND, 137, 6)),
+
+    // message type 4
+    BASE_STATION(
+            unsigned(AisField.ID, 0, 6),
+            unsigned(AisField.REPEAT_INDICATOR, 6, 2),
+            unsigned(AisField.MMSI, 8, 30),
+            unsigned(AisField.YEAR, 38, 14),
+            unsigned(AisField.MONTH, 52, 4),
+            unsigned(AisField.DAY, 56, 5),
+            unsigned(AisField.HOUR, 61, 5),
+            unsigned(AisField.MINUTE, 66, 6),
+            unsigned(AisField.UTC_SECOND, 72, 6),
+            unsigned(AisField.POSITION_ACCURACY, 78, 1),
+            coordinate(AisField.LONGITUDE, 79, 28, 10000, 181),
+            coordinate(AisField.LATITUDE, 107, 27, 10000, 91)),
+
+    // message type 5
+    STATIC_AND_VOYAGE(
+            unsigned(AisField.ID, 0, 6),
+            unsigned(AisField.REPEAT_INDICATOR, 6, 2),
+            unsigned(AisField.MMSI, 8, 30),
+            text(AisField.CALL_SIGN, 70, 42),
+            text(AisField.VESSEL_NAME, 112, 120),
+            unsigned(AisField.SHIP_TYPE, 232, 8)),
+
+    // message type 18
+    CLASS_B_POSITION(
+            unsigned(AisField.ID, 0, 6),
+            unsigned(AisField.REPEAT_INDICATOR, 6, 2),
+            unsigned(AisField.MMSI, 8, 30),
+            scaled(AisField.SPEED_OVER_GROUND, 46, 10, 10, 1023),
+            unsigned(AisField.POSITION_ACCURACY, 56, 1),
+            coordinate(AisField.LONGITUDE, 57, 28, 10000, 181),
+            coordinate(AisField.LATITUDE, 85, 27, 10000, 91),
+            scaled(AisField.COURSE_OVER_GROUND, 112, 12, 10),
+            unsigned(AisField.TRUE_HEADING, 124, 9),
+            unsigned(AisField.UTC_SECOND, 133, 6)),
+
+    // message type 19
+    CLASS_B_EXTENDED_POSITION(
+            unsigned(AisField.ID, 0, 6),
+            unsigned(AisField.REPEAT_INDICATOR, 6, 2),
+            unsigned(AisField.MMSI, 8, 30),
+            scaled(AisField.SPEED_OVER_GROUND, 46, 10, 10, 1023),
+            unsigned(AisField.POSITION_ACCURACY, 56, 1),
+            coordinate(AisField.LONGITUDE, 57, 28, 10000, 181),
+            coordinate(AisField.LATITUDE, 85, 27, 10000, 91),
+            scaled(AisField.COURSE_OVER_GROUND, 112, 12, 10),
+            unsigned(AisField.TRUE_HEADING, 124, 9),
+            unsigned(AisField.UTC_SECOND, 133, 6),
+            text(AisField.VESSEL_NAME, 143, 120),
+            unsigned(AisField.SHIP_TYPE, 263, 8)),
+
+    // message type 24 with part number 0
+    STATIC_DATA_PART_A(
+            unsigned(AisField.ID, 0, 6),
+            unsigned(AisField.REPEAT_INDICATOR, 6, 2),
+            unsigned(AisField.MMSI, 8, 30),
+            unsigned(AisField.PART_NUMBER, 38, 2),
+            text(AisField.VESSEL_NAME, 40, 120)),
+
+    // message type 24 with part number 1
+    STATIC_DATA_PART_B(
+            unsigned(AisField.ID, 0, 6),
+            unsigned(AisField.REPEAT_INDICATOR, 6, 2),
+            unsigned(AisField.MMSI, 8, 30),
+            unsigned(AisField.PART_NUMBER, 38, 2),
+            unsigned(AisField.SHIP_TYPE, 40, 8),
+            text(AisField.CALL_SIGN, 90, 42)),
+
+    // message type 27, coordinates in 1/10 minutes, speed in knots and course in degrees
+    LONG_RANGE_POSITION(
+            unsigned(AisField.ID, 0, 6),
+            unsigned(AisField.REPEAT_INDICATOR, 6, 2),
+            unsigned(AisField.MMSI, 8, 30),
+            unsigned(AisField.POSITION_ACCURACY, 38, 1),
+            unsigned(AisField.NAVIGATIONAL_STATUS, 40, 4),
+            coordinate(AisField.LONGITUDE, 44, 18, 10, 181),
+            coordinate(AisField.LATITUDE, 62, 17, 10, 91),
+            scaled(AisField.SPEED_OVER_GROUND, 79, 6, 1, 63),
+            scaled(AisField.COURSE_OVER_GROUND, 85, 9, 1, 511));
+
+    // type 24 messages have their part number in bits 38-39
+    static final int PART_NUMBER_END = 40;
+
+    private final FieldLayout[] fields;
+    private final FieldLayout[] fieldsByIndex = new FieldLayout[AisField.values().length];
+    private final int bitLength;
+
+    private AisMessageLayout(FieldLayout... fields) {
+        this.fields = fields;
+        int length = 0;
+        for (FieldLayout field : fields) {
+            fieldsByIndex[field.index] = field;
+            length = Math.max(length, field.start + field.width);
+        }
+        this.bitLength = length;
+    }
+
+    /**
+     * @return the layout of the message, or null if the type is not supported or a type 24 payload is too short to
+     *         hold its part number
+     */
+    public static AisMessageLayout forPayload(AisBitBuffer payload) {
+        int messageType = payload.getMessageType();
+        if (messageType == 24) {
+            return payload.getBitLength() < PART_NUMBER_END ? null : forType(messageType, payload.getUnsigned(38, 2));
+        }
+        return forType(messageType, 0);
+    }
+
+    /**
+     * @param partNumber the part number of a type 24 message, ignored for other types
+     * @return the layout of the message, or null if the type or part is not supported
+     */
+    public static AisMessageLayout forType(int messageType, int partNumber) {
+        switch (messageType) {
+            case 1:
+            case 2:
+            case 3:
+                return CLASS_A_POSITION;
+            case 4:
+                return BASE_STATION;
+            case 5:
+                return STATIC_AND_VOYAGE;
+            case 18:
+                return CLASS_B_POSITION;
+            case 19:
+                return CLASS_B_EXTENDED_POSITION;
+            case 24:
+                if (partNumber == 0) {
+                    return STATIC_DATA_PART_A;
+                } else if (partNumber == 1) {
+                    return STATIC_DATA_PART_B;
+                }
+                return null;
+            case 27:
+                return LONG_RANGE_POSITION;
+            default:
+                return null;
+        }
+    }
+
+    public AisMessage decode(AisBitBuffer payload) {
+        int[] values = new int[fieldsByIndex.length];
+        String[] texts = new String[fieldsByIndex.length];
+        for (FieldLayout field : fields) {
+            if (field.text) {
+                texts[field.index] = payload.getString(field.start, field.width);
+            } else if (field.signed) {
+                values[field.index] = payload.getSigned(field.start, field.width);
+            } else {
+                values[field.index] = payload.getUnsigned(field.start, field.width);
+            }
+        }
+        return new AisMessage(this, values, texts);
+    }
+
+    /**
+     * @return the number of payload bits needed to decode every field of the layout
+     */
+    public int getBitLength() {
+        return bitLength;
+    }
+
+    boolean hasField(AisField field) {
+        return fieldsByIndex[field.getIndex()] != null;
+    }
+
+    // scaled value of a numeric field, null when the field is missing or holds its not available value
+    Double scale(AisField field, int value) {
+        FieldLayout layout = fieldsByIndex[field.getIndex()];
+        if (layout == null || value == layout.notAvailable) {
+            return null;
+        }
+        return value / layout.divisor;
+    }
+
+    private static FieldLayout unsigned(AisField field, int start, int width) {
+        return new FieldLayout(field, start, width, false, false, 1, FieldLayout.ALWAYS_AVAILABLE);
+    }
+
+    private static FieldLayout signed(AisField field, int start, int width) {
+        return new FieldLayout(field, start, width, true, false, 1, FieldLayout.ALWAYS_AVAILABLE);
+    }
+
+    private static FieldLayout scaled(AisField field, int start, int width, double divisor) {
+        return new FieldLayout(field, start, width, false, false, divisor, FieldLayout.ALWAYS_AVAILABLE);
+    }
+
+    private static FieldLayout scaled(AisField field, int start, int width, double divisor, int notAvailable) {
+        return new FieldLayout(field, start, width, false, false, divisor, notAvailable);
+    }
+
+    // coordinates are decoded to minutes, notAvailable is given in degrees
+    private static FieldLayout coordinate(AisField field, int start, int width, int unitsPerMinute, int notAvailableDegrees) {
+        return new FieldLayout(field, start, width, true, false, unitsPerMinute, notAvailableDegrees * 60 * unitsPerMinute);
+    }
+
+    private static FieldLayout text(AisField field, int start, int width) {
+        return new FieldLayout(field, start, width, false, true, 1, FieldLayout.ALWAYS_AVAILABLE);
+    }
+
+    private static final class FieldLayout {
+
+        private static final int ALWAYS_AVAILABLE = Integer.MIN_VALUE;
+
+        private final int index;
+        private final int start;
+        private final int width;
+        private final boolean signed;
+        private final boolean text;
+        private final double divisor;
+        private final int notAvailable;
+
+        private FieldLayout(AisField field, int start, int width, boolean signed, boolean text, double divisor, int notAvailable) {
+            this.index = field.getIndex();
+            this.start = start;
+            this.width = width;
+            this.signed = signed;
+            this.text = text;
+            this.divisor = divisor;
+            this.notAvailable = notAvailable;
+        }
+    }
+}
@@ -14,8 +14,6 @@ package eu.europa.ec.fisheries.uvms.plugins.ais.mapper;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.TimeZone;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import eu.europa.ec.fisheries.schema.exchange.module.v1.ExchangeModuleMethod;
 import eu.europa.ec.fisheries.schema.exchange.module.v1.ReceiveAssetInformationRequest;
 import eu.europa.ec.fisheries.schema.exchange.movement.asset.v1.AssetId;
@@ -25,24 +23,23 @@ import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementBaseType;
 import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementPoint;
 import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementSourceType;
 import eu.europa.ec.fisheries.uvms.asset.client.model.AssetDTO;
+import eu.europa.ec.fisheries.uvms.plugins.ais.constants.AisField;
 import eu.europa.ec.fisheries.uvms.plugins.ais.service.Conversion;
 
 public class AisParser {
 
-    private static final Logger LOG = LoggerFactory.getLogger(AisParser.class);
-
-    //according to: http://emsa.europa.eu/cise-documentation/cise-data-model-1.5.3/model/guidelines/687507181.html
-    private static final int AIS_SPEED_ERROR_CODE = 1023;
-    
     private AisParser() {}
     
     public enum AisType {
         TYPE1(Type.POSITION), 
         TYPE2(Type.POSITION), 
         TYPE3(Type.POSITION), 
+        TYPE4(null), // base station report, decoded but not a vessel position
         TYPE5(Type.STATIC), 
         TYPE18(Type.POSITION), 
+        TYPE19(Type.POSITION), 
         TYPE24(Type.STATIC),
+        TYPE27(Type.POSITION), 
         UNKNOWN(null);
         
         private Type type;
@@ -64,11 +61,64 @@ public class AisParser {
         }
     }
     
-    public static AisType parseAisType(String binary) {
-        if (binary == null) {
+    /**
+     * Outcome of validating a payload before it is decoded.
+     */
+    public enum Result {
+        OK,
+        EMPTY,
+        UNSUPPORTED_TYPE,
+        INVALID_CHARACTER,
+        TRUNCATED,
+        UNSUPPORTED_PART
+    }
+
+    /**
+     * Checks the characters and the length of an armored payload against the layout of its message type without
+     * unpacking it. A payload that passes is decoded without exceptions.
+     */
+    public static Result validate(String payload) {
+        int symbols = payload == null ? 0 : AisBitBuffer.payloadLength(payload);
+        if (symbols == 0) {
+            return Result.EMPTY;
+        }
+        int messageType = Conversion.getSixBitValueForSymbol(payload.charAt(0));
+        if (messageType < 0) {
+            return Result.INVALID_CHARACTER;
+        }
+        if (AisMessageLayout.forType(messageType, 0) == null) {
+            return Result.UNSUPPORTED_TYPE;
+        }
+        for (int i = 1; i < symbols; i++) {
+            if (Conversion.getSixBitValueForSymbol(payload.charAt(i)) < 0) {
+                return Result.INVALID_CHARACTER;
+            }
+        }
+        int bitLength = symbols * 6;
+        AisMessageLayout layout;
+        if (messageType == 24) {
+            if (bitLength < AisMessageLayout.PART_NUMBER_END) {
+                return Result.TRUNCATED;
+            }
+            // bits 38-39 are the middle bits of the seventh symbol
+            layout = AisMessageLayout.forType(messageType, (Conversion.getSixBitValueForSymbol(payload.charAt(6)) >>> 2) & 3);
+            if (layout == null) {
+                return Result.UNSUPPORTED_PART;
+            }
+        } else {
+            layout = AisMessageLayout.forType(messageType, 0);
+        }
+        return bitLength < layout.getBitLength() ? Result.TRUNCATED : Result.OK;
+    }
+
+    public static AisType parseAisType(AisBitBuffer payload) {
+        if (payload == null) {
             return AisType.UNKNOWN;
         }
-        int messageType = Integer.parseInt(binary.substring(0, 6), 2);
+        return parseAisType(payload.getMessageType());
+    }
+
+    public static AisType parseAisType(int messageType) {
         switch (messageType) {
             case 1:
                 return AisType.TYPE1;
@@ -76,229 +126,112 @@ public class AisParser {
                 return AisType.TYPE2;
             case 3:
                 return AisType.TYPE3;
+            case 4:
+                return AisType.TYPE4;
             case 5:
                 return AisType.TYPE5;
             case 18:
                 return AisType.TYPE18;
+            case 19:
+                return AisType.TYPE19;
             case 24:
                 return AisType.TYPE24;
+            case 27:
+                return AisType.TYPE27;
             default:
                 return AisType.UNKNOWN;
         }
     }
     
-    public static MovementBaseType parsePositionReport(String binary, AisType aisType) {
-        switch (aisType) {
-            case TYPE1:
-            case TYPE2:
-            case TYPE3:
-                return parseReportType123(binary);
-            case TYPE18:
-                return parseReportType18(binary);
-            default:
-                return null;
+    /**
+     * @return the decoded message, or null if the message type is not supported or the payload is truncated
+     */
+    public static AisMessage decode(AisBitBuffer payload) {
+        AisMessageLayout layout = AisMessageLayout.forPayload(payload);
+        if (layout == null || payload.getBitLength() < layout.getBitLength()) {
+            return null;
         }
+        return layout.decode(payload);
     }
-    
-    public static AssetDTO parseStaticReport(String binary, AisType aisType) {
-        switch (aisType) {
-            case TYPE5:
-                return parseReportType5(binary);
-            case TYPE24:
-                return parseReportType24(binary);
-            default:
-                return null;
+
+    public static MovementBaseType parsePositionReport(AisBitBuffer payload, AisType aisType) {
+        if (!aisType.isPositionReport()) {
+            return null;
         }
+        return parsePositionReport(decode(payload));
     }
     
-    public static MovementBaseType parseReportType123(String binary) {
-        MovementBaseType movement = new MovementBaseType();
-        Integer messageType = Integer.parseInt(binary.substring(0, 6), 2);
-        movement.setStatus(messageType.toString());
-        Integer mmsiNumeric = Integer.MIN_VALUE;
-        try{
-            mmsiNumeric = Integer.parseInt(binary.substring(8, 38), 2);
-        }
-        catch(NumberFormatException nfe){
-            LOG.warn("mmsi is not numeric", nfe);
-        }
-        String mmsi = String.valueOf(mmsiNumeric);
-        movement.setMmsi(mmsi);
-        movement.setAssetId(getAssetId(mmsi));
-
-        movement.setReportedSpeed(parseSpeedOverGround(binary, 50, 60));
-        movement.setAisPositionAccuracy(Short.parseShort(binary.substring(60, 61), 2));
-        MovementPoint point = getMovementPoint(parseCoordinate(binary, 61, 89), parseCoordinate(binary, 89, 116));
-        if (point == null) {
+    public static AssetDTO parseStaticReport(AisBitBuffer payload, AisType aisType) {
+        if (!aisType.isStaticReport()) {
             return null;
         }
-        movement.setPosition(point);
-        movement.setReportedCourse(parseCourseOverGround(binary, 116, 128));
-
-        String ansi3 = getAnsi3FromMMSI(mmsi);
-
-        String trueHeadingStr = binary.substring(128, 137);
-        Integer trueHeading = parseToNumeric("TrueHeading", trueHeadingStr);
-        movement.setTrueHeading(trueHeading);
-        movement.setPositionTime(getTimestamp(Integer.parseInt(binary.substring(137, 143), 2)));
-        movement.setSource(MovementSourceType.AIS);
-        movement.setFlagState(ansi3);
-        return movement;
+        return parseStaticReport(decode(payload));
     }
- 
-    public static AssetDTO parseReportType5(String binary) {
-        ReceiveAssetInformationRequest req = new ReceiveAssetInformationRequest();
-        req.setMethod(ExchangeModuleMethod.RECEIVE_ASSET_INFORMATION);
 
-        Integer mmsiNumeric = Integer.MIN_VALUE;
-        try{
-            mmsiNumeric = Integer.parseInt(binary.substring(8, 38), 2);
-        }
-        catch(NumberFormatException nfe){
-            LOG.warn("mmsi is not numeric", nfe);
+    /**
+     * @return the ship type of messages carrying one (types 5, 19 and 24 part B), otherwise null
+     */
+    public static String parseShipType(AisMessage message) {
+        if (message == null || !message.hasField(AisField.SHIP_TYPE)) {
+            return null;
         }
-        String mmsi = String.valueOf(mmsiNumeric);
-
-        String vesselName = Conversion.getAsciiStringFromBinaryString(binary.substring(112, 232));
-        String ircs = Conversion.getAsciiStringFromBinaryString(binary.substring(70, 112));
-        Integer shipType = Integer.parseInt(binary.substring(232, 240), 2);
-
-        String ansi3 = getAnsi3FromMMSI(mmsi);
-
-        AssetDTO assetDTO = new AssetDTO();
-        assetDTO.setMmsi(mmsi);
-
-        assetDTO.setName(vesselName);
-        assetDTO.setIrcs(ircs);
-        assetDTO.setVesselType(Conversion.getShiptypeForCode(shipType));
-        assetDTO.setFlagStateCode(ansi3);
-        assetDTO.setUpdatedBy("AIS Message Type 5");
-        return assetDTO;
+        return Conversion.getShiptypeForCode(message.getInt(AisField.SHIP_TYPE));
     }
-    
-    public static MovementBaseType parseReportType18(String binary) {
 
-        if (binary == null || binary.trim().length() < 1) {
+    public static MovementBaseType parsePositionReport(AisMessage message) {
+        if (message == null) {
             return null;
         }
-        MovementBaseType movement = new MovementBaseType();
-        Integer messageType = Integer.parseInt(binary.substring(0, 6), 2);
-        movement.setStatus(messageType.toString());
-        // mmsi
-        Integer mmsiNumeric = Integer.MIN_VALUE;
-        try{
-            mmsiNumeric = Integer.parseInt(binary.substring(8, 38), 2);
-        }
-        catch(NumberFormatException nfe){
-            LOG.warn("mmsi is not numeric", nfe);
-        }
-        String mmsi = String.valueOf(mmsiNumeric);
-        movement.setMmsi(mmsi);
-        movement.setAssetId(getAssetId(mmsi));
-
-        // speedOverGround
-        Double speedOverGround = parseSpeedOverGround(binary, 46, 56);
-        movement.setReportedSpeed(speedOverGround);
-
-        movement.setAisPositionAccuracy(Short.parseShort(binary.substring(56, 57), 2));
-
-        // position  longitude latitude
-        MovementPoint point = getMovementPoint(parseCoordinate(binary, 57, 85), parseCoordinate(binary, 85, 112));
+        MovementPoint point = getMovementPoint(toDegrees(message.getDouble(AisField.LONGITUDE)), toDegrees(message.getDouble(AisField.LATITUDE)));
         if (point == null) {
             return null;
         }
+        MovementBaseType movement = new MovementBaseType();
+        movement.setStatus(String.valueOf(message.getMessageType()));
+        String mmsi = String.valueOf(message.getMmsi());
+        movement.setMmsi(mmsi);
+        movement.setAssetId(getAssetId(mmsi));
+        movement.setReportedSpeed(message.getDouble(AisField.SPEED_OVER_GROUND));
+        movement.setAisPositionAccuracy((short) message.getInt(AisField.POSITION_ACCURACY));
         movement.setPosition(point);
-
-        // course
-        movement.setReportedCourse(parseCourseOverGround(binary, 112, 124));
-
-        // trueHeading
-        String trueHeadingStr = binary.substring(124, 133);
-        Integer trueHeading = parseToNumeric("TrueHeading", trueHeadingStr);
-        movement.setTrueHeading(trueHeading);
-
-        String ansi3 = getAnsi3FromMMSI(mmsi);
-
-        // timestamp
-        movement.setPositionTime(getTimestamp(Integer.parseInt(binary.substring(133, 139), 2)));
+        movement.setReportedCourse(message.getDouble(AisField.COURSE_OVER_GROUND));
+        movement.setTrueHeading(message.getInteger(AisField.TRUE_HEADING));
+        movement.setPositionTime(getTimestamp(message.getInteger(AisField.UTC_SECOND)));
         movement.setSource(MovementSourceType.AIS);
-        movement.setFlagState(ansi3);
+        movement.setFlagState(getAnsi3FromMMSI(message.getMmsi()));
         return movement;
     }
-    
-    public static AssetDTO parseReportType24(String binary) {
 
-        if (binary == null || binary.trim().length() < 1) {
+    // type 24 part A only carries the name, flag state is set together with the ship type like before
+    public static AssetDTO parseStaticReport(AisMessage message) {
+        if (message == null) {
             return null;
         }
         ReceiveAssetInformationRequest req = new ReceiveAssetInformationRequest();
         req.setMethod(ExchangeModuleMethod.RECEIVE_ASSET_INFORMATION);
 
-        String mmsi = String.valueOf(Integer.parseInt(binary.substring(8, 38), 2));
-        String vesselName = null;
-        Integer shipType = null;
-        String ircs = null;
-        String ansi3 = null;
-
-        // if partNumber == 0   the rest of the message is interpreted as a Part A
-        // if partNumber == 1   the rest of the message is interpreted as a Part B
-        // values of 2 and 3 is not allowed
-        Integer partNumber = parseToNumeric("Part Number", binary, 38, 40);
-        if (partNumber.equals(0)) {
-            vesselName = Conversion.getAsciiStringFromBinaryString(binary.substring(40, 160));
-        } else if (partNumber.equals(1)) {
-            shipType = Integer.parseInt(binary.substring(40,48), 2);
-            ircs = Conversion.getAsciiStringFromBinaryString(binary.substring(90, 132));
-            ansi3 = getAnsi3FromMMSI(mmsi);
-        }
-
         AssetDTO assetDTO = new AssetDTO();
-        assetDTO.setMmsi(mmsi);
-        assetDTO.setName(vesselName);
-        assetDTO.setIrcs(ircs);
-        if(shipType != null) {
-            assetDTO.setVesselType(Conversion.getShiptypeForCode(shipType));
+        assetDTO.setMmsi(String.valueOf(message.getMmsi()));
+        assetDTO.setName(message.getText(AisField.VESSEL_NAME));
+        assetDTO.setIrcs(message.getText(AisField.CALL_SIGN));
+        if (message.hasField(AisField.SHIP_TYPE)) {
+            assetDTO.setVesselType(parseShipType(message));
+            assetDTO.setFlagStateCode(getAnsi3FromMMSI(message.getMmsi()));
         }
-        assetDTO.setFlagStateCode(ansi3);
-        assetDTO.setUpdatedBy("AIS Message Type 24");
+        assetDTO.setUpdatedBy("AIS Message Type " + message.getMessageType());
         return assetDTO;
-
-    }
-    
-    private static String getAnsi3FromMMSI(String mmsi){
-        String ansi3 = "ERR";
-        if(mmsi != null && mmsi.length() >= 3) {
-            String cc = mmsi.substring(0, 3);
-            ansi3 = Conversion.getAnsi3ForCountryCode(cc);
-        }
-        return ansi3;
-    }
-
-    private static Double parseCoordinate(String data, int stringStart, int stringEnd) {
-        try {
-            String byteString = data.substring(stringStart, stringEnd);
-            Long i = Long.parseLong(byteString, 2);
-            if (byteString.charAt(0) == '1') {
-                i -= (1L << byteString.length());
-            }
-            return (i.doubleValue() / 10000 / 60);
-        }catch(NumberFormatException nfe){
-            return null;
-        }
     }
 
-    private static double parseCourseOverGround(String s, int stringStart, int stringEnd) {
-        Integer i = Integer.parseInt(s.substring(stringStart, stringEnd), 2);
-        return i.doubleValue() / 10;
+    private static Double toDegrees(Double minutes) {
+        return minutes == null ? null : minutes / 60;
     }
 
-
-    private static Double parseSpeedOverGround(String s, int stringStart, int stringEnd) {
-        Integer speedOverGround = Integer.parseInt(s.substring(stringStart, stringEnd), 2);
-        if(speedOverGround == AIS_SPEED_ERROR_CODE){
-            return null;
+    private static String getAnsi3FromMMSI(int mmsi){
+        int mid = Conversion.getMid(mmsi);
+        if(mid < 0) {
+            return "ERR";
         }
-        return speedOverGround.doubleValue() / 10;
+        return Conversion.getAnsi3ForMid(mid);
     }
 
     private static AssetId getAssetId(String mmsi) {
@@ -312,7 +245,7 @@ public class AisParser {
 
     private static MovementPoint getMovementPoint(Double longitude, Double latitude) {
 
-        if (longitude == null || latitude == null || longitude.equals(181d) || latitude.equals(91d)) {
+        if (longitude == null || latitude == null) {
             return null;
         }
 
@@ -333,23 +266,4 @@ public class AisParser {
         }
         return cal.getTime();
     }
-
-    private static Integer parseToNumeric(String fieldName, String str) {
-        try {
-            return Integer.parseInt(str, 2);
-        } catch (NumberFormatException e) {
-            LOG.error(fieldName + " is not numeric", e);
-            throw e;
-        }
-    }
-
-    private static Integer parseToNumeric(String fieldName, String sentence, int startPosInclusive, int endPosExclusive) {
-        try {
-            String str = sentence.substring(startPosInclusive, endPosExclusive);
-            return Integer.parseInt(str, 2);
-        } catch (NumberFormatException | IndexOutOfBoundsException e) {
-            LOG.error(fieldName + " parsing error", e);
-            throw e;
-        }
-    }
 }
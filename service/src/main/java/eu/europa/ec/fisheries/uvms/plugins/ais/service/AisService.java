@@ -11,25 +11,32 @@ copy of the GNU General Public License along with the IFDM Suite. If not, see <h
  */
 package eu.europa.ec.fisheries.uvms.plugins.ais.service;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import javax.ejb.DependsOn;
 import javax.ejb.EJB;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
 import javax.ejb.Schedule;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
 import javax.ejb.Timer;
 import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.concurrent.ManagedThreadFactory;
 import javax.inject.Inject;
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -65,16 +72,37 @@ public class AisService {
     @Inject
     private ExchangeService exchangeService;
     
+    @Inject
+    private JmsSessionPool sessionPool;
+    
     @Resource
     private ManagedExecutorService executorService;
 
-    private List<CompletableFuture<Void>> processes = new ArrayList<>();
+    @Resource
+    private ManagedThreadFactory threadFactory;
 
-    private List<MovementBaseType> failedSendList = new ArrayList<>();
-    private Set<String> knownFishingVessels = new HashSet<>();
+    private Queue<CompletableFuture<Void>> processes = new ConcurrentLinkedQueue<>();
+    private ShardedBatchExecutor batchExecutor;
+    private NmeaReassembler reassembler;
+    private volatile StreamingIngest streamingIngest;
+    private Thread streamingThread;
+
+    private volatile ResendSpool resendSpool;
+    private final AtomicBoolean resending = new AtomicBoolean();
+    private long resendBackoffMillis;
+    private long nextResendAttempt;
+    private final MmsiSet knownFishingVessels = new MmsiSet();
+    private long checkpointedModificationCount = -1;
 
     @PostConstruct
     public void init() {
+        loadKnownFishingVessels();
+        openResendSpool();
+        reassembler = new NmeaReassembler(SettingsReader.getInt(startUp, "REASSEMBLY_MAX_PENDING", 1024),
+                SettingsReader.getInt(startUp, "REASSEMBLY_TIMEOUT_MS", 60000));
+        batchExecutor = new ShardedBatchExecutor(this::startBatch,
+                SettingsReader.getInt(startUp, "PROCESSING_LANES", Runtime.getRuntime().availableProcessors()),
+                SettingsReader.getInt(startUp, "MAX_PENDING_SENTENCES", 500000));
         try {
             Context ctx = new InitialContext();
             AISConnectionFactoryImpl factory = (AISConnectionFactoryImpl) ctx.lookup("java:/eis/AISConnectionFactory");
@@ -98,9 +126,11 @@ public class AisService {
 
     @PreDestroy
     public void destroy() {
+        stopStreamingIngest();
         if (connection != null) {
             connection.close();
         }
+        drainBatches();
         Iterator<CompletableFuture<Void>> processIterator = processes.iterator();
         while (processIterator.hasNext()) {
             CompletableFuture<Void> process = processIterator.next();
@@ -115,6 +145,26 @@ public class AisService {
                 process.cancel(true);
             }
         }
+        checkpointKnownFishingVessels();
+        if (resendSpool != null) {
+            resendSpool.close();
+        }
+    }
+
+    // lets the lanes work off their pending sentences, whatever is left after the timeout is counted as dropped
+    private void drainBatches() {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(15);
+        try {
+            while (batchExecutor.getPending() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int discarded = batchExecutor.discardPending();
+        if (discarded > 0) {
+            LOG.warn("Dropped {} pending sentences on shutdown", discarded);
+        }
     }
 
     @Schedule(second = "*/15", minute = "*", hour = "*", persistent = false)
@@ -132,53 +182,179 @@ public class AisService {
         }
 
         if (connection != null && connection.isOpen()) {
-            Iterator<CompletableFuture<Void>> processIterator = processes.iterator();
-            while (processIterator.hasNext()) {
-                CompletableFuture<Void> process = processIterator.next();
-                if (process.isDone() || process.isCancelled()) {
-                    processIterator.remove();
-                }
+            if (isStreamingIngest()) {
+                startStreamingIngest();
+                return;
             }
+            stopStreamingIngest();
             List<String> sentences = connection.getSentences();
-            CompletableFuture<Void> process = CompletableFuture.supplyAsync(() -> processService.processMessages(sentences, knownFishingVessels), executorService)
-                    .thenAccept(result -> {
-                        downsamplingService.getDownSampledMovements().putAll(result.getDownsampledMovements());
-                        downsamplingService.getStoredAssetInfo().putAll(result.getDownsampledAssets());
-                        }
-                    );
-            processes.add(process);
-            LOG.info("Got {} sentences from AIS RA. Currently running {} parallel threads", sentences.size(), processes.size());
+            processBatch(sentences);
+            LOG.info("Got {} sentences from AIS RA. Currently running {} parallel threads, {} sentences pending", sentences.size(), batchExecutor.getInFlight(), batchExecutor.getPending());
+        }
+    }
+
+    // multipart messages are joined before batching, their fragments may be split across polls
+    private void processBatch(List<String> sentences) {
+        batchExecutor.submit(reassembler.reassemble(sentences));
+    }
+
+    private CompletableFuture<Void> startBatch(List<String> sentences) {
+        processes.removeIf(process -> process.isDone() || process.isCancelled());
+        CompletableFuture<Void> process = CompletableFuture.supplyAsync(() -> processService.processMessages(sentences, knownFishingVessels), executorService)
+                .thenAccept(result -> {
+                    downsamplingService.addDownSampledMovements(result.getDownsampledMovements());
+                    downsamplingService.addStoredAssetInfo(result.getDownsampledAssets());
+                    }
+                );
+        processes.add(process);
+        return process;
+    }
+
+    // INGEST_MODE=stream drains the connection continuously instead of every 15 seconds, the timer then only keeps it running
+    private boolean isStreamingIngest() {
+        return "stream".equalsIgnoreCase(SettingsReader.getString(startUp, "INGEST_MODE", "schedule"));
+    }
+
+    private void startStreamingIngest() {
+        if (streamingIngest != null && streamingIngest.isRunning() && streamingThread.isAlive()) {
+            return;
+        }
+        streamingIngest = new StreamingIngest(
+                () -> startUp.isEnabled() && connection.isOpen() ? connection.getSentences() : Collections.emptyList(),
+                this::processBatch,
+                SettingsReader.getInt(startUp, "INGEST_BATCH_SIZE", 1000),
+                SettingsReader.getInt(startUp, "INGEST_LINGER_MS", 500),
+                SettingsReader.getInt(startUp, "INGEST_POLL_MS", 50));
+        streamingThread = threadFactory.newThread(streamingIngest);
+        streamingThread.setName("ais-streaming-ingest");
+        streamingThread.start();
+    }
+
+    private void stopStreamingIngest() {
+        if (streamingIngest == null) {
+            return;
         }
+        streamingIngest.stop();
+        try {
+            streamingThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        streamingIngest = null;
+        streamingThread = null;
     }
 
-    @Schedule(minute = "*/15", hour = "*", persistent = false)
+    // replays at most RESEND_REPLAY_PER_RUN spooled movements, backing off exponentially while exchange keeps failing.
+    // This is the only caller that probes an open exchange breaker, the spool is not read before the breaker allows it.
+    @Lock(LockType.READ)
+    @Schedule(second = "*/10", minute = "*", hour = "*", persistent = false)
     public void resend(Timer timer) {
+        if (resendSpool == null || !startUp.isRegistered() || !resending.compareAndSet(false, true)) {
+            return;
+        }
         try {
-            if (startUp.isRegistered()) {
-                List<MovementBaseType> list = getAndClearFailedMovementList();
-                exchangeService.sendToExchange(list, startUp.getRegisterClassName());
+            if (System.currentTimeMillis() < nextResendAttempt || resendSpool.getPending() == 0) {
+                return;
+            }
+            CircuitBreaker breaker = sessionPool.getExchangeBreaker();
+            if (!breaker.allowRequest()) {
+                return;
+            }
+            int batchSize = Math.max(1, SettingsReader.getInt(startUp, "RESEND_REPLAY_BATCH", 500));
+            int budget = Math.max(batchSize, SettingsReader.getInt(startUp, "RESEND_REPLAY_PER_RUN", 5000));
+            while (budget > 0) {
+                ResendSpool.Replay replay = resendSpool.next(Math.min(batchSize, budget));
+                if (replay.isEmpty()) {
+                    break;
+                }
+                // attempted movements that failed are spooled again by the exchange service, so only those can go
+                int attempted = exchangeService.resendToExchange(replay.getMovements(), startUp.getRegisterClassName());
+                resendSpool.acknowledge(replay, attempted);
+                budget -= replay.getMovements().size();
+                if (attempted < replay.getMovements().size() || breaker.getState() != CircuitBreaker.State.CLOSED) {
+                    backOffResend();
+                    return;
+                }
             }
+            resendBackoffMillis = 0;
         } catch (Exception e) {
             LOG.error(e.toString(), e);
+            backOffResend();
+        } finally {
+            resending.set(false);
         }
     }
 
-    public void addCachedMovement(MovementBaseType movementBaseType) {
-        synchronized (failedSendList) {
-            failedSendList.add(movementBaseType);
+    private void backOffResend() {
+        long min = Math.max(1, SettingsReader.getInt(startUp, "RESEND_BACKOFF_MIN_MS", 10000));
+        long max = Math.max(min, SettingsReader.getInt(startUp, "RESEND_BACKOFF_MAX_MS", 900000));
+        resendBackoffMillis = resendBackoffMillis == 0 ? min : Math.min(max, resendBackoffMillis * 2);
+        nextResendAttempt = System.currentTimeMillis() + resendBackoffMillis;
+        LOG.warn("Resend failed, next attempt in {} ms, {} positions pending", resendBackoffMillis, resendSpool.getPending());
+    }
+
+    private void openResendSpool() {
+        String defaultDir = System.getProperty("jboss.server.data.dir", System.getProperty("java.io.tmpdir"));
+        Path directory = Paths.get(SettingsReader.getString(startUp, "RESEND_SPOOL_DIR", Paths.get(defaultDir, "ais", "resend").toString()));
+        try {
+            resendSpool = new ResendSpool(directory,
+                    SettingsReader.getInt(startUp, "RESEND_SEGMENT_BYTES", 4194304),
+                    SettingsReader.getInt(startUp, "RESEND_SPOOL_MAX_BYTES", 268435456));
+            LOG.info("Opened resend spool in {}, {} positions pending", directory, resendSpool.getPending());
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Could not open resend spool in {}, failed positions will be dropped: {}", directory, e.getMessage());
         }
     }
 
-    public List<MovementBaseType> getAndClearFailedMovementList() {
-        List<MovementBaseType> tmp = new ArrayList<>();
-        synchronized (failedSendList) {
-            tmp.addAll(failedSendList);
-            failedSendList.clear();
+    @Schedule(minute = "*/5", hour = "*", persistent = false)
+    public void checkpointKnownFishingVessels() {
+        long modificationCount = knownFishingVessels.getModificationCount();
+        if (modificationCount == checkpointedModificationCount) {
+            return;
+        }
+        Path file = getKnownFishingVesselsFile();
+        try {
+            MmsiSetSnapshot.write(knownFishingVessels, file);
+            checkpointedModificationCount = modificationCount;
+            LOG.debug("Saved {} known fishing vessels to {}", knownFishingVessels.size(), file);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not save known fishing vessels to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void loadKnownFishingVessels() {
+        Path file = getKnownFishingVesselsFile();
+        try {
+            int loaded = MmsiSetSnapshot.read(file, knownFishingVessels);
+            checkpointedModificationCount = knownFishingVessels.getModificationCount();
+            LOG.info("Loaded {} known fishing vessels from {}", loaded, file);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not load known fishing vessels from {}: {}", file, e.getMessage());
         }
-        return tmp;
     }
 
-    public Set<String> getKnownFishingVessels(){
+    private Path getKnownFishingVesselsFile() {
+        String defaultDir = System.getProperty("jboss.server.data.dir", System.getProperty("java.io.tmpdir"));
+        String defaultFile = Paths.get(defaultDir, "ais", "known-fishing-vessels.bin").toString();
+        return Paths.get(SettingsReader.getString(startUp, "KNOWN_FISHING_VESSELS_FILE", defaultFile));
+    }
+
+    @Lock(LockType.READ)
+    public boolean hasResendSpool() {
+        return resendSpool != null;
+    }
+
+    @Lock(LockType.READ)
+    public void addCachedMovement(MovementBaseType movementBaseType) {
+        ResendSpool spool = resendSpool;
+        if (spool == null) {
+            LOG.warn("No resend spool, dropping position for {}", movementBaseType.getMmsi());
+            return;
+        }
+        spool.append(movementBaseType);
+    }
+
+    public MmsiSet getKnownFishingVessels(){
         return knownFishingVessels;
     }
 
@@ -186,4 +362,70 @@ public class AisService {
     public int getKnownFishingVesselsSize() {
         return knownFishingVessels.size();
     }
-}
\ No newline at end of file
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_batches_inflight", absolute = true)
+    public int getBatchesInFlight() {
+        return batchExecutor.getInFlight();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_pending_sentences", absolute = true)
+    public int getPendingSentences() {
+        return batchExecutor.getPending();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_merged_sentences", absolute = true)
+    public long getMergedSentences() {
+        return batchExecutor.getMerged();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_dropped_sentences", absolute = true)
+    public long getDroppedSentences() {
+        return batchExecutor.getDropped();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_resend_pending", absolute = true)
+    public long getResendPending() {
+        return resendSpool == null ? 0 : resendSpool.getPending();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_resend_dropped", absolute = true)
+    public long getResendDropped() {
+        return resendSpool == null ? 0 : resendSpool.getDropped();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_resend_spool_bytes", absolute = true)
+    public long getResendSpoolBytes() {
+        return resendSpool == null ? 0 : resendSpool.getSizeBytes();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_fragments_pending", absolute = true)
+    public int getPendingFragments() {
+        return reassembler.getPending();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_fragments_dropped", absolute = true)
+    public long getDroppedFragments() {
+        return reassembler.getDropped();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_checksum_errors", absolute = true)
+    public long getChecksumErrors() {
+        return reassembler.getChecksumErrors();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_malformed_sentences", absolute = true)
+    public long getMalformedSentences() {
+        return reassembler.getMalformed();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.util.Collection;
+import java.util.Map;
+import eu.europa.ec.fisheries.uvms.asset.client.model.AssetDTO;
+
+/**
+ * Collects static reports per mmsi between asset updates. Type 5 and type 24 part A and B reports of a vessel
+ * are merged into one asset, a field reported later replaces the earlier value and missing fields keep it.
+ */
+public class AssetAccumulator {
+
+    private final DoubleBufferedMap<AssetDTO> assets = new DoubleBufferedMap<>();
+
+    public void add(AssetDTO asset) {
+        if (asset.getMmsi() == null) {
+            return;
+        }
+        assets.merge(asset.getMmsi(), asset, AssetAccumulator::merge);
+    }
+
+    public void addAll(Collection<AssetDTO> assets) {
+        for (AssetDTO asset : assets) {
+            add(asset);
+        }
+    }
+
+    /**
+     * @return the merged assets collected since the last drain
+     */
+    public Map<String, AssetDTO> drain() {
+        return assets.swap();
+    }
+
+    /**
+     * @return read only view of the assets collected since the last drain
+     */
+    public Map<String, AssetDTO> getAssets() {
+        return assets.getLive();
+    }
+
+    public boolean isEmpty() {
+        return assets.isEmpty();
+    }
+
+    // builds a new asset, the merged ones may still be read by other threads
+    public static AssetDTO merge(AssetDTO current, AssetDTO update) {
+        AssetDTO merged = new AssetDTO();
+        merged.setMmsi(update.getMmsi());
+        merged.setName(latest(current.getName(), update.getName()));
+        merged.setIrcs(latest(current.getIrcs(), update.getIrcs()));
+        merged.setVesselType(latest(current.getVesselType(), update.getVesselType()));
+        merged.setFlagStateCode(latest(current.getFlagStateCode(), update.getFlagStateCode()));
+        merged.setUpdatedBy(latest(current.getUpdatedBy(), update.getUpdatedBy()));
+        return merged;
+    }
+
+    private static String latest(String current, String update) {
+        return update == null || update.isEmpty() ? current : update;
+    }
+}
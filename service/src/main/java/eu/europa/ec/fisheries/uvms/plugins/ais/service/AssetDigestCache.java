@@ -0,0 +1,140 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import eu.europa.ec.fisheries.uvms.asset.client.model.AssetDTO;
+
+/**
+ * Remembers a 64 bit digest of the last asset sent per mmsi, so unchanged static reports are not sent again.
+ * Mmsi and digest are kept in primitive arrays with open addressing. Not thread safe.
+ */
+public class AssetDigestCache {
+
+    private static final int EMPTY = -1;
+    private static final int MIN_CAPACITY = 16;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private int[] keys;
+    private long[] digests;
+    private int size;
+
+    public AssetDigestCache() {
+        keys = newKeys(MIN_CAPACITY);
+        digests = new long[MIN_CAPACITY];
+    }
+
+    /**
+     * @return true if the asset has the same fields as the last one recorded for its mmsi
+     */
+    public boolean isUnchanged(AssetDTO asset) {
+        int mmsi = toMmsi(asset);
+        if (mmsi < 0) {
+            return false;
+        }
+        int index = indexOf(keys, mmsi);
+        return keys[index] == mmsi && digests[index] == digest(asset);
+    }
+
+    public void record(AssetDTO asset) {
+        int mmsi = toMmsi(asset);
+        if (mmsi < 0) {
+            return;
+        }
+        int index = indexOf(keys, mmsi);
+        if (keys[index] == EMPTY) {
+            if ((size + 1) * 2 > keys.length) {
+                rehash(keys.length * 2);
+                index = indexOf(keys, mmsi);
+            }
+            keys[index] = mmsi;
+            size++;
+        }
+        digests[index] = digest(asset);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        keys = newKeys(MIN_CAPACITY);
+        digests = new long[MIN_CAPACITY];
+        size = 0;
+    }
+
+    // updatedBy only tells which message type reported the asset, it is not part of the vessel state
+    static long digest(AssetDTO asset) {
+        long hash = FNV_OFFSET;
+        hash = hash(hash, asset.getName());
+        hash = hash(hash, asset.getIrcs());
+        hash = hash(hash, asset.getVesselType());
+        hash = hash(hash, asset.getFlagStateCode());
+        return hash;
+    }
+
+    private static long hash(long hash, String value) {
+        if (value != null) {
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+                hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+            }
+        }
+        // separator that is not valid utf-8, so null, empty and shifted values give different digests
+        return (hash ^ (value == null ? 0xfe : 0xff)) * FNV_PRIME;
+    }
+
+    private static int toMmsi(AssetDTO asset) {
+        String mmsi = asset.getMmsi();
+        if (mmsi == null || mmsi.isEmpty() || mmsi.length() > 9) {
+            return EMPTY;
+        }
+        for (int i = 0; i < mmsi.length(); i++) {
+            if (mmsi.charAt(i) < '0' || mmsi.charAt(i) > '9') {
+                return EMPTY;
+            }
+        }
+        return Integer.parseInt(mmsi);
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldDigests = digests;
+        keys = newKeys(capacity);
+        digests = new long[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int index = indexOf(keys, oldKeys[i]);
+                keys[index] = oldKeys[i];
+                digests[index] = oldDigests[i];
+            }
+        }
+    }
+
+    // index of the mmsi or of the empty slot where it belongs
+    private static int indexOf(int[] keys, int mmsi) {
+        int mask = keys.length - 1;
+        int h = mmsi * 0x9E3779B9;
+        int index = (h ^ (h >>> 16)) & mask;
+        while (keys[index] != mmsi && keys[index] != EMPTY) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private static int[] newKeys(int capacity) {
+        int[] keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+}
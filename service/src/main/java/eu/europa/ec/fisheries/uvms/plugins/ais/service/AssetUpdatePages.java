@@ -0,0 +1,89 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.json.bind.Jsonb;
+import eu.europa.ec.fisheries.uvms.asset.client.model.AssetDTO;
+
+/**
+ * Splits asset updates into json arrays holding at most maxAssets assets and, unless a single asset is larger,
+ * at most maxBytes bytes. Each asset is serialized with json-b, so a page is exactly what json-b gives for the
+ * assets in it. Pages are built when they are requested, so only one page is held in memory.
+ */
+class AssetUpdatePages implements Iterator<String> {
+
+    private final Jsonb jsonb;
+    private final Iterator<AssetDTO> assets;
+    private final int maxAssets;
+    private final int maxBytes;
+    private String pending;
+    private int pageSize;
+
+    AssetUpdatePages(Jsonb jsonb, Iterator<AssetDTO> assets, int maxAssets, int maxBytes) {
+        this.jsonb = jsonb;
+        this.assets = assets;
+        this.maxAssets = maxAssets;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return pending != null || assets.hasNext();
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        StringBuilder page = new StringBuilder().append('[');
+        int size = 2;
+        pageSize = 0;
+        while (pageSize < maxAssets && hasNext()) {
+            String asset = pending != null ? pending : jsonb.toJson(assets.next());
+            int assetSize = pageSize > 0 ? size(asset) + 1 : size(asset);
+            if (pageSize > 0 && size + assetSize > maxBytes) {
+                pending = asset;
+                break;
+            }
+            pending = null;
+            if (pageSize > 0) {
+                page.append(',');
+            }
+            page.append(asset);
+            size += assetSize;
+            pageSize++;
+        }
+        return page.append(']').toString();
+    }
+
+    /**
+     * @return number of assets in the page last returned by {@link #next()}
+     */
+    int getPageSize() {
+        return pageSize;
+    }
+
+    // utf-8 size of the json, without encoding it when it is plain ascii
+    private static int size(String json) {
+        int size = json.length();
+        for (int i = 0; i < json.length(); i++) {
+            if (json.charAt(i) >= 0x80) {
+                return json.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.jms.CompletionListener;
+import javax.jms.Message;
+import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementBaseType;
+
+/**
+ * Tracks the asynchronous sends of one publishing call. At most window sends are outstanding, a caller that would
+ * exceed it waits for a completion. Every movement is reported at most once, either as sent or as failed.
+ * Movements given up with {@link #abandon()} are not reported, their completions are ignored.
+ */
+class AsyncSendTracker {
+
+    private final int window;
+    private final Semaphore permits;
+    private final Map<MovementBaseType, Boolean> outstanding = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final Consumer<MovementBaseType> onSent;
+    private final Consumer<MovementBaseType> onFailed;
+
+    AsyncSendTracker(int window, Consumer<MovementBaseType> onSent, Consumer<MovementBaseType> onFailed) {
+        this.window = window;
+        this.permits = new Semaphore(window);
+        this.onSent = onSent;
+        this.onFailed = onFailed;
+    }
+
+    /**
+     * Waits for room in the window and registers the movement as outstanding.
+     *
+     * @return the listener to pass to the asynchronous send
+     */
+    CompletionListener track(MovementBaseType movement) throws InterruptedException {
+        permits.acquire();
+        outstanding.put(movement, Boolean.TRUE);
+        return new CompletionListener() {
+            @Override
+            public void onCompletion(Message message) {
+                complete(movement, onSent);
+            }
+
+            @Override
+            public void onException(Message message, Exception exception) {
+                complete(movement, onFailed);
+            }
+        };
+    }
+
+    /**
+     * For a tracked movement whose send threw before it was handed to the broker.
+     */
+    void failed(MovementBaseType movement) {
+        complete(movement, onFailed);
+    }
+
+    int getOutstanding() {
+        return outstanding.size();
+    }
+
+    /**
+     * Waits until all sends completed or the timeout passed.
+     *
+     * @return true if no send is outstanding anymore
+     */
+    boolean awaitAll(long timeoutMillis) {
+        try {
+            if (permits.tryAcquire(window, timeoutMillis, TimeUnit.MILLISECONDS)) {
+                permits.release(window);
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return outstanding.isEmpty();
+    }
+
+    /**
+     * Gives up the sends still outstanding.
+     *
+     * @return the movements still outstanding, their completions are ignored from now on
+     */
+    List<MovementBaseType> abandon() {
+        synchronized (outstanding) {
+            List<MovementBaseType> remaining = new ArrayList<>(outstanding.keySet());
+            outstanding.clear();
+            return remaining;
+        }
+    }
+
+    private void complete(MovementBaseType movement, Consumer<MovementBaseType> handler) {
+        if (outstanding.remove(movement) != null) {
+            handler.accept(movement);
+        }
+        permits.release();
+    }
+}
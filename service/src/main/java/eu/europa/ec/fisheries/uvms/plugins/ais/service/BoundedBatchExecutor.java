@@ -0,0 +1,117 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts batches with at most maxInFlight of them running at the same time.
+ * Sentences submitted while the limit is reached are merged into one pending batch, started when a running batch finishes.
+ * When the pending batch grows beyond maxPending sentences the oldest sentences are dropped.
+ */
+public class BoundedBatchExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BoundedBatchExecutor.class);
+
+    private final Function<List<String>, CompletableFuture<?>> starter;
+    private final int maxInFlight;
+    private final int maxPending;
+
+    private int inFlight;
+    private List<String> pending = new ArrayList<>();
+    private long merged;
+    private long dropped;
+
+    public BoundedBatchExecutor(Function<List<String>, CompletableFuture<?>> starter, int maxInFlight, int maxPending) {
+        this.starter = starter;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxPending = Math.max(1, maxPending);
+    }
+
+    public synchronized void submit(List<String> sentences) {
+        if (sentences.isEmpty()) {
+            return;
+        }
+        if (inFlight < maxInFlight) {
+            start(sentences);
+            return;
+        }
+        pending.addAll(sentences);
+        merged += sentences.size();
+        int excess = pending.size() - maxPending;
+        if (excess > 0) {
+            pending.subList(0, excess).clear();
+            dropped += excess;
+            LOG.warn("{} batches in flight, dropped {} of the oldest pending sentences", inFlight, excess);
+        }
+    }
+
+    /**
+     * Drops the pending batch, used on shutdown when it will not be started anymore.
+     *
+     * @return the number of dropped sentences
+     */
+    public synchronized int discardPending() {
+        int discarded = pending.size();
+        dropped += discarded;
+        pending = new ArrayList<>();
+        return discarded;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    public synchronized long getMerged() {
+        return merged;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    private void start(List<String> sentences) {
+        inFlight++;
+        CompletableFuture<?> batch;
+        try {
+            batch = starter.apply(sentences);
+        } catch (RuntimeException e) {
+            inFlight--;
+            throw e;
+        }
+        batch.whenComplete((result, e) -> finished());
+    }
+
+    private synchronized void finished() {
+        inFlight--;
+        if (!pending.isEmpty() && inFlight < maxInFlight) {
+            List<String> next = pending;
+            pending = new ArrayList<>();
+            try {
+                start(next);
+            } catch (RuntimeException e) {
+                // nothing is left to start them later, typically the executor is shutting down
+                dropped += next.size();
+                LOG.error("Could not start the pending batch, dropped {} sentences: {}", next.size(), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops calls to a destination that keeps failing. After failureThreshold consecutive failures the breaker opens
+ * and rejects calls, once openMillis have passed it lets one probe through and closes again when the probe succeeds.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+
+    private volatile State state = State.CLOSED;
+    private volatile int consecutiveFailures;
+    private long openedAt;
+    private long probeStartedAt;
+    private boolean probing;
+    private long opened;
+    private long halfOpened;
+    private long closed;
+    private long rejected;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this(name, failureThreshold, openMillis, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(String name, int failureThreshold, long openMillis, LongSupplier clock) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(0, openMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * @return true when the caller may use the destination, it then reports the outcome with onSuccess or onFailure
+     */
+    public boolean allowRequest() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            long now = clock.getAsLong();
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (now - openedAt < openMillis) {
+                        rejected++;
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    halfOpened++;
+                    LOG.info("Circuit breaker {} is half open, probing", name);
+                    break;
+                default:
+                    // one probe at a time, a probe that never reported back is replaced after openMillis
+                    if (probing && now - probeStartedAt < openMillis) {
+                        rejected++;
+                        return false;
+                    }
+                    break;
+            }
+            probing = true;
+            probeStartedAt = now;
+            return true;
+        }
+    }
+
+    public void onSuccess() {
+        if (state == State.CLOSED && consecutiveFailures == 0) {
+            return;
+        }
+        synchronized (this) {
+            consecutiveFailures = 0;
+            if (state != State.CLOSED) {
+                state = State.CLOSED;
+                probing = false;
+                closed++;
+                LOG.info("Circuit breaker {} is closed", name);
+            }
+        }
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            probing = false;
+            openedAt = clock.getAsLong();
+            opened++;
+            LOG.warn("Circuit breaker {} is open after {} consecutive failures, retrying in {} ms", name, consecutiveFailures, openMillis);
+        }
+    }
+
+    /**
+     * @return true while calls are rejected, callers that were let in stop early when the breaker trips
+     */
+    public boolean isOpen() {
+        return state == State.OPEN;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public synchronized long getOpened() {
+        return opened;
+    }
+
+    public synchronized long getHalfOpened() {
+        return halfOpened;
+    }
+
+    public synchronized long getClosed() {
+        return closed;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+}
@@ -15,6 +15,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -28,14 +29,24 @@ public class Conversion {
     private static Map<String, CountryCode> countryCodeMap = buildCountryCodeMap();
     private static Map<Integer, String> shipTypeMap = buildShiptypeMap();
 
+    // primitive indexed copies of the maps above for the decoding hot path
+    private static final int[] sixBitValueTable = buildSixBitValueTable();
+    private static final char[] sixBitAsciiTable = buildSixBitAsciiTable();
+    private static final String[] midAnsi3Table = buildMidAnsi3Table();
+    private static final String[] shipTypeTable = buildShiptypeTable();
+
     private Conversion() {}
     
     public static String getShiptypeForCode(Integer code){
         if(code == null) return "";
-        if((code < 0) || (code > 99)){
+        return getShiptypeForCode(code.intValue());
+    }
+
+    public static String getShiptypeForCode(int code){
+        if((code < 0) || (code >= shipTypeTable.length)){
             return "No such code : " + code;
         }
-        return shipTypeMap.get(code);
+        return shipTypeTable[code];
     }
 
     public static String getAnsi3ForCountryCode(String countryCode)  {
@@ -47,10 +58,52 @@ public class Conversion {
         return cc.getAnsi3();
     }
 
+    public static String getAnsi3ForMid(int mid)  {
+        String ansi3 = (mid >= 0 && mid < midAnsi3Table.length) ? midAnsi3Table[mid] : null;
+        if(ansi3 == null){
+            LOG.warn("Unknown country code: {}", mid);
+            return "ERR";
+        }
+        return ansi3;
+    }
+
+    // the country code is the three leading digits of the mmsi
+    public static int getMid(int mmsi)  {
+        if (mmsi < 100) {
+            return -1;
+        }
+        int mid = mmsi;
+        while (mid >= 1000) {
+            mid /= 10;
+        }
+        return mid;
+    }
+
+    public static List<Integer> getMidsForAnsi3(String ansi3)  {
+        List<Integer> mids = new ArrayList<>();
+        for (int mid = 0; mid < midAnsi3Table.length; mid++) {
+            if (ansi3.equals(midAnsi3Table[mid])) {
+                mids.add(mid);
+            }
+        }
+        return mids;
+    }
+
     public static String getBinaryForSymbol(char c)  {
         return symbolMap.get("" + c);
     }
 
+    /**
+     * @return the six bit value of an armored payload character, or -1 if the character is not valid in a payload
+     */
+    public static int getSixBitValueForSymbol(char c)  {
+        return c < sixBitValueTable.length ? sixBitValueTable[c] : -1;
+    }
+
+    public static char getAsciiForSixBitValue(int value)  {
+        return sixBitAsciiTable[value & 0x3F];
+    }
+
     // decoder for binary6-strings
     public static String getAsciiStringFromBinaryString(String binary) {
         StringBuilder builder = new StringBuilder();
@@ -478,6 +531,39 @@ public class Conversion {
 
     
 
+    private static int[] buildSixBitValueTable() {
+        int[] table = new int[128];
+        Arrays.fill(table, -1);
+        for (Map.Entry<String, String> symbol : symbolMap.entrySet()) {
+            table[symbol.getKey().charAt(0)] = Integer.parseInt(symbol.getValue(), 2);
+        }
+        return table;
+    }
+
+    private static char[] buildSixBitAsciiTable() {
+        char[] table = new char[64];
+        for (Map.Entry<String, Character> ascii : binToAsciiMap.entrySet()) {
+            table[Integer.parseInt(ascii.getKey(), 2)] = ascii.getValue();
+        }
+        return table;
+    }
+
+    private static String[] buildMidAnsi3Table() {
+        String[] table = new String[1000];
+        for (Map.Entry<String, CountryCode> countryCode : countryCodeMap.entrySet()) {
+            table[Integer.parseInt(countryCode.getKey())] = countryCode.getValue().getAnsi3().intern();
+        }
+        return table;
+    }
+
+    private static String[] buildShiptypeTable() {
+        String[] table = new String[100];
+        for (Map.Entry<Integer, String> shipType : shipTypeMap.entrySet()) {
+            table[shipType.getKey()] = shipType.getValue().intern();
+        }
+        return table;
+    }
+
     private static String removeTrailingSnabelA(String s) {
         return s.replace("@","").trim();
     }
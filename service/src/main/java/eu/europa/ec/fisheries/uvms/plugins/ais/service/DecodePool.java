@@ -0,0 +1,59 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.DependsOn;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.inject.Inject;
+import eu.europa.ec.fisheries.uvms.plugins.ais.StartupBean;
+
+/**
+ * Threads decoding the chunks of large batches. They are created by the container's thread factory, so they
+ * carry the naming context and class loader of the application, and are not shared with the rest of the JVM.
+ */
+@Singleton
+@DependsOn({"StartupBean"})
+public class DecodePool {
+
+    @Inject
+    private StartupBean startUp;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        int threads = SettingsReader.getInt(startUp, "PARALLEL_DECODE_THREADS", Runtime.getRuntime().availableProcessors());
+        executor = Executors.newFixedThreadPool(Math.max(1, threads), threadFactory);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @Lock(LockType.READ)
+    public Executor getExecutor() {
+        return executor;
+    }
+}
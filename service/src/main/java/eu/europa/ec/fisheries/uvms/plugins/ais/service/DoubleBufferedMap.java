@@ -0,0 +1,101 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+/**
+ * Map written by many threads and drained as a whole. Writers always put into the live buffer,
+ * {@link #swap()} replaces it with an empty one and returns the retired buffer once the writers still in it are done.
+ * No write is lost between taking the values and clearing them.
+ */
+public class DoubleBufferedMap<V> {
+
+    private final AtomicReference<Buffer<V>> live = new AtomicReference<>(new Buffer<>());
+
+    public void put(String key, V value) {
+        Buffer<V> buffer = enter();
+        try {
+            buffer.values.put(key, value);
+        } finally {
+            buffer.writers.decrementAndGet();
+        }
+    }
+
+    public void putAll(Map<String, ? extends V> values) {
+        Buffer<V> buffer = enter();
+        try {
+            buffer.values.putAll(values);
+        } finally {
+            buffer.writers.decrementAndGet();
+        }
+    }
+
+    // atomic per key, the function must not modify the values it is given
+    public void merge(String key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        Buffer<V> buffer = enter();
+        try {
+            buffer.values.merge(key, value, function);
+        } finally {
+            buffer.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the retired buffer, no longer written to by anyone
+     */
+    public Map<String, V> swap() {
+        Buffer<V> retired = live.getAndSet(new Buffer<>());
+        while (retired.writers.get() > 0) {
+            Thread.yield();
+        }
+        return retired.values;
+    }
+
+    /**
+     * @return read only view of the live buffer
+     */
+    public Map<String, V> getLive() {
+        return Collections.unmodifiableMap(live.get().values);
+    }
+
+    public int size() {
+        return live.get().values.size();
+    }
+
+    public boolean isEmpty() {
+        return live.get().values.isEmpty();
+    }
+
+    // registers as writer of the live buffer, retrying if it was retired in between
+    private Buffer<V> enter() {
+        while (true) {
+            Buffer<V> buffer = live.get();
+            buffer.writers.incrementAndGet();
+            if (live.get() == buffer) {
+                return buffer;
+            }
+            buffer.writers.decrementAndGet();
+        }
+    }
+
+    private static final class Buffer<V> {
+
+        private final ConcurrentHashMap<String, V> values = new ConcurrentHashMap<>();
+        private final AtomicInteger writers = new AtomicInteger();
+    }
+}
@@ -12,22 +12,27 @@ copy of the GNU General Public License along with the IFDM Suite. If not, see <h
 package eu.europa.ec.fisheries.uvms.plugins.ais.service;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Resource;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
 import javax.ejb.Schedule;
 import javax.ejb.Singleton;
 import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.inject.Inject;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
 import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementBaseType;
 import eu.europa.ec.fisheries.uvms.asset.client.model.AssetDTO;
 import eu.europa.ec.fisheries.uvms.plugins.ais.StartupBean;
 
+// the buffers are concurrent, so writers from the processing lanes never wait for a flush
 @Singleton
+@Lock(LockType.READ)
 public class DownsamplingService {
 
     @Inject
@@ -39,8 +44,11 @@ public class DownsamplingService {
     @Resource
     private ManagedExecutorService executorService;
     
-    private ConcurrentMap<String, MovementBaseType> downSampledMovements = new ConcurrentHashMap<>();
-    private Map<String, AssetDTO> downSampledAssetInfo = new HashMap<>();
+    private DoubleBufferedMap<MovementBaseType> downSampledMovements = new DoubleBufferedMap<>();
+    private AssetAccumulator downSampledAssetInfo = new AssetAccumulator();
+    private AssetDigestCache sentAssets = new AssetDigestCache();
+    private AtomicLong suppressedAssetUpdates = new AtomicLong();
+    private final AtomicBoolean sendingAssetUpdates = new AtomicBoolean();
     
 //    @Schedule(second = "*/30", minute = "*", hour = "*", persistent = false)
     @Schedule(minute = "*/5", hour = "*", persistent = false )
@@ -49,9 +57,28 @@ public class DownsamplingService {
             return;
         }
 
-        List<MovementBaseType> movements = new ArrayList<>(downSampledMovements.values());
-        downSampledMovements.clear();
-        CompletableFuture.runAsync(() -> exchangeService.sendToExchange(movements, startUp.getRegisterClassName()), executorService);
+        Map<String, MovementBaseType> movements = downSampledMovements.swap();
+        int chunkSize = Math.max(1, SettingsReader.getInt(startUp, "DOWNSAMPLE_CHUNK_SIZE", 500));
+        CompletableFuture.runAsync(() -> drain(movements, chunkSize), executorService);
+    }
+
+    // sends the retired buffer in chunks, so only one chunk of movements is copied at a time
+    private void drain(Map<String, MovementBaseType> movements, int chunkSize) {
+        List<MovementBaseType> chunk = new ArrayList<>(Math.min(chunkSize, movements.size()));
+        for (MovementBaseType movement : movements.values()) {
+            chunk.add(movement);
+            if (chunk.size() == chunkSize) {
+                exchangeService.sendToExchange(chunk, startUp.getRegisterClassName());
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            exchangeService.sendToExchange(chunk, startUp.getRegisterClassName());
+        }
+    }
+
+    public void addDownSampledMovements(Map<String, MovementBaseType> movements) {
+        downSampledMovements.putAll(movements);
     }
     
     @Schedule(minute = "6", hour = "*", persistent = false )
@@ -59,17 +86,63 @@ public class DownsamplingService {
         if (!startUp.isEnabled()) {
             return;
         }
-        exchangeService.sendAssetUpdates(downSampledAssetInfo.values());
-        downSampledAssetInfo.clear();
+        if (downSampledAssetInfo.isEmpty()) {
+            return;
+        }
+        // the digest cache is not thread safe, only one asset update runs at a time
+        if (!sendingAssetUpdates.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sendChangedAssets();
+        } finally {
+            sendingAssetUpdates.set(false);
+        }
+    }
+
+    private void sendChangedAssets() {
+        Map<String, AssetDTO> assets = downSampledAssetInfo.drain();
+        List<AssetDTO> changed = new ArrayList<>();
+        for (AssetDTO asset : assets.values()) {
+            if (sentAssets.isUnchanged(asset)) {
+                suppressedAssetUpdates.incrementAndGet();
+            } else {
+                changed.add(asset);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        // only remember what reached exchange, so a failed update is sent again with the next report
+        if (exchangeService.sendAssetUpdates(changed)) {
+            for (AssetDTO asset : changed) {
+                sentAssets.record(asset);
+            }
+        }
     }
     
 
+    public void addStoredAssetInfo(Map<String, AssetDTO> assets) {
+        downSampledAssetInfo.addAll(assets.values());
+    }
+
+    /**
+     * @return read only view of the assets waiting for the next asset update
+     */
     public Map<String, AssetDTO> getStoredAssetInfo(){
-        return downSampledAssetInfo;
+        return downSampledAssetInfo.getAssets();
     }
 
+    /**
+     * @return read only view of the movements waiting for the next flush
+     */
     public Map<String, MovementBaseType> getDownSampledMovements() {
-        return downSampledMovements;
+        return downSampledMovements.getLive();
+    }
+
+    @Gauge(unit = MetricUnits.NONE, name = "ais_asset_updates_suppressed", absolute = true)
+    public long getSuppressedAssetUpdates() {
+        return suppressedAssetUpdates.get();
     }
     
 }
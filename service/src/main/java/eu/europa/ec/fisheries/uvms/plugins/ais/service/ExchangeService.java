@@ -15,17 +15,17 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
-import javax.annotation.Resource;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import javax.ejb.Stateless;
 import javax.inject.Inject;
 import javax.jms.BytesMessage;
-import javax.jms.Connection;
-import javax.jms.ConnectionFactory;
-import javax.jms.DeliveryMode;
+import javax.jms.CompletionListener;
 import javax.jms.JMSException;
 import javax.jms.MessageProducer;
-import javax.jms.Queue;
 import javax.jms.Session;
 import javax.jms.TextMessage;
 import javax.json.bind.Jsonb;
@@ -40,20 +40,22 @@ import eu.europa.ec.fisheries.schema.exchange.movement.v1.SetReportMovementType;
 import eu.europa.ec.fisheries.schema.exchange.plugin.types.v1.PluginType;
 import eu.europa.ec.fisheries.uvms.asset.client.model.AssetDTO;
 import eu.europa.ec.fisheries.uvms.exchange.model.mapper.ExchangeModuleRequestMapper;
+import eu.europa.ec.fisheries.uvms.plugins.ais.StartupBean;
+import eu.europa.ec.fisheries.uvms.plugins.ais.service.JmsSessionPool.PooledSession;
+import eu.europa.ec.fisheries.uvms.plugins.ais.service.ParseErrorReporter.ParseError;
 
 @Stateless
 public class ExchangeService {
     
     private static final Logger LOG = LoggerFactory.getLogger(ExchangeService.class);
-    
-    @Resource(mappedName = "java:/ConnectionFactory")
-    private ConnectionFactory connectionFactory;
 
-    @Resource(mappedName = "java:/jms/queue/UVMSExchangeEvent")
-    private Queue exchangeQueue;
+    private static final AtomicBoolean ASYNC_MODE_WARNED = new AtomicBoolean();
+    
+    @Inject
+    private JmsSessionPool sessionPool;
 
-    @Resource(mappedName = "java:/jms/queue/UVMSPluginFailedReport")
-    private Queue errorQueue;
+    @Inject
+    private StartupBean startUp;
 
     @Inject
     private AisService aisService;
@@ -66,70 +68,452 @@ public class ExchangeService {
     
     public boolean sendAssetUpdates(Collection<AssetDTO> assets) {
         boolean ok = true;
-        String json = jsonb.toJson(assets);
-        LOG.trace(json);
-        try (Connection connection = connectionFactory.createConnection();
-             Session session = connection.createSession(false, 1);
-             MessageProducer producer = session.createProducer(exchangeQueue)
-        ) {
-            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
-            // emit
-            try {
-                String text = ExchangeModuleRequestMapper.createReceiveAssetInformation(json, "AIS", PluginType.OTHER, "AIS Plugin");
-                TextMessage message = session.createTextMessage();
-                message.setStringProperty("FUNCTION", ExchangeModuleMethod.RECEIVE_ASSET_INFORMATION.toString());
-                message.setText(text);
-                producer.send(message);
-            } catch (RuntimeException e) {
-                LOG.error("Couldn't map movement to setreportmovementtype");
-                sendToErrorQueueParsingError(json);
-            } catch (Exception e) {
-                LOG.info("//NOP: {}", e.getLocalizedMessage());
+        int maxAssets = Math.max(1, SettingsReader.getInt(startUp, "ASSET_PAGE_SIZE", 1000));
+        int maxBytes = Math.max(1, SettingsReader.getInt(startUp, "ASSET_PAGE_MAX_BYTES", 1000000));
+        CircuitBreaker breaker = sessionPool.getExchangeBreaker();
+        // only the resend timer probes an open breaker
+        if (breaker.getState() != CircuitBreaker.State.CLOSED) {
+            return false;
+        }
+        try (PooledSession pooled = sessionPool.borrow()) {
+            Session session = pooled.getSession();
+            MessageProducer producer = pooled.getExchangeProducer();
+            // emit one message per page
+            AssetUpdatePages pages = new AssetUpdatePages(jsonb, assets.iterator(), maxAssets, maxBytes);
+            while (pages.hasNext() && !breaker.isOpen()) {
+                String json = pages.next();
+                LOG.trace(json);
+                try {
+                    String text = ExchangeModuleRequestMapper.createReceiveAssetInformation(json, "AIS", PluginType.OTHER, "AIS Plugin");
+                    TextMessage message = session.createTextMessage();
+                    message.setStringProperty("FUNCTION", ExchangeModuleMethod.RECEIVE_ASSET_INFORMATION.toString());
+                    message.setText(text);
+                    producer.send(message);
+                    breaker.onSuccess();
+                    LOG.debug("Sent {} asset updates", pages.getPageSize());
+                } catch (RuntimeException e) {
+                    LOG.error("Couldn't map movement to setreportmovementtype");
+                    sendToErrorQueueParsingError(json);
+                } catch (JMSException e) {
+                    LOG.error("couldn't send asset updates");
+                    pooled.invalidate();
+                    breaker.onFailure();
+                    ok = false;
+                } catch (Exception e) {
+                    LOG.info("//NOP: {}", e.getLocalizedMessage());
+                }
             }
         } catch (JMSException e) {
             LOG.error("couldn't send movement");
+            breaker.onFailure();
             ok = false;
         }
-        return ok;
+        return ok && !breaker.isOpen();
     }
 
-    public void sendToExchange(Collection<MovementBaseType> movements, String pluginName) {
+    /**
+     * @return the number of movements that could not be sent and were handed to the resend spool
+     */
+    public int sendToExchange(Collection<MovementBaseType> movements, String pluginName) {
         LOG.info("Sending {} positions to exchange", movements.size());
-        try (Connection connection = connectionFactory.createConnection();
-                Session session = connection.createSession(false, 1);
-                MessageProducer producer = session.createProducer(exchangeQueue)) {
-            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+        CircuitBreaker breaker = sessionPool.getExchangeBreaker();
+        if (breaker.getState() != CircuitBreaker.State.CLOSED) {
+            // exchange is known to be down, the resend timer probes it with a spooled movement
+            if (aisService.hasResendSpool() || !breaker.allowRequest()) {
+                return spool(movements);
+            }
+            // without a resend spool nothing else would probe it
+            List<MovementBaseType> batch = new ArrayList<>(movements);
+            int attempted = resendToExchange(batch, pluginName);
+            return spool(batch.subList(attempted, batch.size()));
+        }
+        return publish(movements, pluginName, breaker, aisService::addCachedMovement);
+    }
+
+    /**
+     * Sends movements read back from the resend spool, the caller got the go ahead from the exchange breaker.
+     * While the breaker is half open only the first movement is sent, as probe, and the others follow once it
+     * closed the breaker. Movements that could not be attempted are left to the caller instead of being spooled,
+     * attempted ones that failed are spooled again.
+     *
+     * @return the number of leading movements that were attempted
+     */
+    public int resendToExchange(List<MovementBaseType> movements, String pluginName) {
+        CircuitBreaker breaker = sessionPool.getExchangeBreaker();
+        if (movements.isEmpty() || breaker.isOpen()) {
+            return 0;
+        }
+        int first = 0;
+        if (breaker.getState() == CircuitBreaker.State.HALF_OPEN) {
+            if (!sendProbe(movements.get(0), pluginName, breaker)) {
+                return 0;
+            }
+            if (breaker.getState() != CircuitBreaker.State.CLOSED) {
+                return 1;
+            }
+            first = 1;
+        }
+        AtomicInteger notAttempted = new AtomicInteger();
+        publish(movements.subList(first, movements.size()), pluginName, breaker, movement -> notAttempted.incrementAndGet());
+        return movements.size() - notAttempted.get();
+    }
+
+    /*
+     * Movements that are not attempted because the breaker opened, or no session could be had, are handed to
+     * notAttempted. They always follow the attempted ones.
+     */
+    private int publish(Collection<MovementBaseType> movements, String pluginName, CircuitBreaker breaker, Consumer<MovementBaseType> notAttempted) {
+        String mode = SettingsReader.getString(startUp, "PUBLISH_MODE", "single");
+        // settings are read once per call, not once per movement
+        boolean cachedMarshalling = Boolean.parseBoolean(SettingsReader.getString(startUp, "PUBLISH_CACHED_MARSHALLING", "true"));
+        if ("transacted".equalsIgnoreCase(mode)) {
+            return sendToExchangeTransacted(movements, pluginName, cachedMarshalling, breaker, notAttempted);
+        }
+        if ("async".equalsIgnoreCase(mode)) {
+            return sendToExchangeAsync(movements, pluginName, cachedMarshalling, breaker, notAttempted);
+        }
+        if ("batch".equalsIgnoreCase(mode)) {
+            return sendToExchangeBatched(movements, pluginName, cachedMarshalling, breaker, notAttempted);
+        }
+        int failed = 0;
+        try (PooledSession pooled = sessionPool.borrow()) {
+            Session session = pooled.getSession();
+            MessageProducer producer = pooled.getExchangeProducer();
 
             // emit
             for (MovementBaseType movement : movements) {
+                if (breaker.isOpen()) {
+                    notAttempted.accept(movement);
+                    failed++;
+                    continue;
+                }
                 try {
-                    SetReportMovementType movementReport = getMovementReport(movement, pluginName);
-                    String text = ExchangeModuleRequestMapper.createSetMovementReportRequest(movementReport, "AIS", null, Instant.now(),  PluginType.OTHER, "AIS", null);
+                    String text = toMovementReportText(movement, pluginName, cachedMarshalling);
                     TextMessage message = session.createTextMessage();
                     message.setStringProperty("FUNCTION", ExchangeModuleMethod.SET_MOVEMENT_REPORT.value());
                     message.setText(text);
                     producer.send(message);
+                    breaker.onSuccess();
                     aisIncoming.inc();
                 } catch (RuntimeException e) {
                     LOG.error("Couldn't map movement to setreportmovementtype");
                     sendToErrorQueueParsingError(movement.toString());
                 } catch (JMSException e) {
                     // save it and try again in a scheduled thread
+                    pooled.invalidate();
+                    breaker.onFailure();
                     aisService.addCachedMovement(movement);
+                    failed++;
                 } catch (Exception e) {
                     LOG.info("//NOP: {}", e.getLocalizedMessage());
                 }
             }
         } catch (JMSException e) {
+            // nothing was sent, keep them for the next resend run
+            LOG.error("couldn't send movement");
+            breaker.onFailure();
+            movements.forEach(notAttempted);
+            return movements.size();
+        }
+        return failed;
+    }
+
+    // the half open probe, a single plain send whatever the publish mode
+    private boolean sendProbe(MovementBaseType movement, String pluginName, CircuitBreaker breaker) {
+        boolean cachedMarshalling = Boolean.parseBoolean(SettingsReader.getString(startUp, "PUBLISH_CACHED_MARSHALLING", "true"));
+        String text;
+        try {
+            text = toMovementReportText(movement, pluginName, cachedMarshalling);
+        } catch (RuntimeException e) {
+            LOG.error("Couldn't map movement to setreportmovementtype");
+            sendToErrorQueueParsingError(movement.toString());
+            return true;
+        }
+        try (PooledSession pooled = sessionPool.borrow()) {
+            try {
+                TextMessage message = pooled.getSession().createTextMessage();
+                message.setStringProperty("FUNCTION", ExchangeModuleMethod.SET_MOVEMENT_REPORT.value());
+                message.setText(text);
+                pooled.getExchangeProducer().send(message);
+                breaker.onSuccess();
+                aisIncoming.inc();
+                return true;
+            } catch (JMSException | RuntimeException e) {
+                pooled.invalidate();
+                throw e;
+            }
+        } catch (JMSException | RuntimeException e) {
+            LOG.warn("Exchange probe failed: {}", e.getMessage());
+            breaker.onFailure();
+            return false;
+        }
+    }
+
+    private int spool(Collection<MovementBaseType> movements) {
+        movements.forEach(aisService::addCachedMovement);
+        return movements.size();
+    }
+
+    // commits every PUBLISH_COMMIT_SIZE movements or PUBLISH_COMMIT_MS milliseconds instead of once per message
+    private int sendToExchangeTransacted(Collection<MovementBaseType> movements, String pluginName, boolean cachedMarshalling, CircuitBreaker breaker,
+            Consumer<MovementBaseType> notAttempted) {
+        int commitSize = Math.max(1, SettingsReader.getInt(startUp, "PUBLISH_COMMIT_SIZE", 500));
+        long commitMillis = Math.max(0, SettingsReader.getInt(startUp, "PUBLISH_COMMIT_MS", 1000));
+        int retries = Math.max(0, SettingsReader.getInt(startUp, "PUBLISH_COMMIT_RETRIES", 1));
+        List<MovementBaseType> batch = new ArrayList<>(Math.min(commitSize, movements.size()));
+        List<String> texts = new ArrayList<>(Math.min(commitSize, movements.size()));
+        long batchStart = System.currentTimeMillis();
+        int failed = 0;
+        for (MovementBaseType movement : movements) {
+            if (breaker.isOpen()) {
+                notAttempted.accept(movement);
+                failed++;
+                continue;
+            }
+            try {
+                texts.add(toMovementReportText(movement, pluginName, cachedMarshalling));
+                batch.add(movement);
+            } catch (RuntimeException e) {
+                // a movement that can't be mapped never reaches the transaction
+                LOG.error("Couldn't map movement to setreportmovementtype");
+                sendToErrorQueueParsingError(movement.toString());
+                continue;
+            }
+            if (batch.size() >= commitSize || System.currentTimeMillis() - batchStart >= commitMillis) {
+                failed += commitBatch(batch, texts, retries, breaker, notAttempted);
+                batch.clear();
+                texts.clear();
+                batchStart = System.currentTimeMillis();
+            }
+        }
+        if (!batch.isEmpty()) {
+            failed += commitBatch(batch, texts, retries, breaker, notAttempted);
+        }
+        return failed;
+    }
+
+    /*
+     * Keeps up to PUBLISH_ASYNC_WINDOW sends outstanding instead of waiting for the broker after every message.
+     *
+     * JMS 2.0 section 12.2 does not permit send with a CompletionListener in an EJB container, so this mode is only
+     * used when PUBLISH_MODE=async is set. A provider that rejects the call fails every send, which opens the
+     * exchange breaker and spools the positions, so single or transacted mode must be used with it.
+     *
+     * Delivery is at least once. Sends unconfirmed after PUBLISH_ASYNC_TIMEOUT_MS are not spooled right away,
+     * the session is closed first, which waits for its incomplete sends and lets their listeners report the real
+     * outcome. Only sends the provider still did not complete are spooled and may reach exchange twice.
+     */
+    private int sendToExchangeAsync(Collection<MovementBaseType> movements, String pluginName, boolean cachedMarshalling, CircuitBreaker breaker,
+            Consumer<MovementBaseType> notAttempted) {
+        if (ASYNC_MODE_WARNED.compareAndSet(false, true)) {
+            LOG.warn("PUBLISH_MODE=async sends with completion listeners, which JMS 2.0 does not permit in an EJB container");
+        }
+        int window = Math.max(1, SettingsReader.getInt(startUp, "PUBLISH_ASYNC_WINDOW", 1000));
+        long timeoutMillis = Math.max(0, SettingsReader.getInt(startUp, "PUBLISH_ASYNC_TIMEOUT_MS", 30000));
+        AtomicInteger failed = new AtomicInteger();
+        AsyncSendTracker tracker;
+        try (PooledSession pooled = sessionPool.borrow()) {
+            Session session = pooled.getSession();
+            MessageProducer producer = pooled.getExchangeProducer();
+            tracker = new AsyncSendTracker(window, movement -> {
+                breaker.onSuccess();
+                aisIncoming.inc();
+            }, movement -> {
+                pooled.invalidate();
+                breaker.onFailure();
+                aisService.addCachedMovement(movement);
+                failed.incrementAndGet();
+            });
+            Iterator<MovementBaseType> iterator = movements.iterator();
+            while (iterator.hasNext()) {
+                MovementBaseType movement = iterator.next();
+                if (breaker.isOpen()) {
+                    notAttempted.accept(movement);
+                    failed.incrementAndGet();
+                    continue;
+                }
+                String text;
+                try {
+                    text = toMovementReportText(movement, pluginName, cachedMarshalling);
+                } catch (RuntimeException e) {
+                    LOG.error("Couldn't map movement to setreportmovementtype");
+                    sendToErrorQueueParsingError(movement.toString());
+                    continue;
+                }
+                CompletionListener listener;
+                try {
+                    listener = tracker.track(movement);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    notAttempted.accept(movement);
+                    failed.incrementAndGet();
+                    iterator.forEachRemaining(remaining -> {
+                        notAttempted.accept(remaining);
+                        failed.incrementAndGet();
+                    });
+                    break;
+                }
+                try {
+                    TextMessage message = session.createTextMessage();
+                    message.setStringProperty("FUNCTION", ExchangeModuleMethod.SET_MOVEMENT_REPORT.value());
+                    message.setText(text);
+                    producer.send(message, listener);
+                } catch (JMSException | RuntimeException e) {
+                    tracker.failed(movement);
+                }
+            }
+            // the session goes back to the pool only when none of its sends is pending, otherwise it is closed
+            if (!tracker.awaitAll(timeoutMillis)) {
+                LOG.warn("{} positions not confirmed after {} ms, closing the session", tracker.getOutstanding(), timeoutMillis);
+                pooled.invalidate();
+                breaker.onFailure();
+            }
+        } catch (JMSException e) {
+            // nothing was sent, keep them for the next resend run
             LOG.error("couldn't send movement");
+            breaker.onFailure();
+            movements.forEach(notAttempted);
+            return movements.size();
+        }
+        List<MovementBaseType> unconfirmed = tracker.abandon();
+        if (!unconfirmed.isEmpty()) {
+            LOG.warn("{} positions still not confirmed after closing the session, sending them again later", unconfirmed.size());
+            unconfirmed.forEach(aisService::addCachedMovement);
+            failed.addAndGet(unconfirmed.size());
+        }
+        return failed.get();
+    }
+
+    // packs up to PUBLISH_BATCH_SIZE movement reports into one message for a batch aware consumer
+    private int sendToExchangeBatched(Collection<MovementBaseType> movements, String pluginName, boolean cachedMarshalling, CircuitBreaker breaker,
+            Consumer<MovementBaseType> notAttempted) {
+        int batchSize = Math.max(1, SettingsReader.getInt(startUp, "PUBLISH_BATCH_SIZE", 100));
+        int failed = 0;
+        List<MovementBaseType> batch = new ArrayList<>(Math.min(batchSize, movements.size()));
+        MovementReportBatch envelope = new MovementReportBatch();
+        try (PooledSession pooled = sessionPool.borrow()) {
+            Session session = pooled.getSession();
+            MessageProducer producer = pooled.getBatchProducer();
+            for (MovementBaseType movement : movements) {
+                if (breaker.isOpen()) {
+                    notAttempted.accept(movement);
+                    failed++;
+                    continue;
+                }
+                try {
+                    envelope.add(toMovementReportText(movement, pluginName, cachedMarshalling));
+                    batch.add(movement);
+                } catch (RuntimeException e) {
+                    LOG.error("Couldn't map movement to setreportmovementtype");
+                    sendToErrorQueueParsingError(movement.toString());
+                    continue;
+                }
+                if (batch.size() >= batchSize) {
+                    failed += sendBatch(pooled, session, producer, envelope, batch, breaker);
+                }
+            }
+            if (!batch.isEmpty()) {
+                failed += sendBatch(pooled, session, producer, envelope, batch, breaker);
+            }
+        } catch (JMSException e) {
+            // nothing was sent, the batch queue or the session is not available
+            LOG.error("couldn't send movement batch: {}", e.getMessage());
+            breaker.onFailure();
+            movements.forEach(notAttempted);
+            return movements.size();
+        }
+        return failed;
+    }
+
+    private int sendBatch(PooledSession pooled, Session session, MessageProducer producer, MovementReportBatch envelope,
+            List<MovementBaseType> batch, CircuitBreaker breaker) {
+        int failed = 0;
+        try {
+            TextMessage message = session.createTextMessage();
+            message.setStringProperty("FUNCTION", MovementReportBatch.FUNCTION);
+            message.setIntProperty(MovementReportBatch.SIZE_PROPERTY, batch.size());
+            message.setText(envelope.toXml());
+            producer.send(message);
+            breaker.onSuccess();
+            aisIncoming.inc(batch.size());
+        } catch (JMSException e) {
+            // save them and try again in a scheduled thread
+            pooled.invalidate();
+            breaker.onFailure();
+            batch.forEach(aisService::addCachedMovement);
+            failed = batch.size();
+        }
+        batch.clear();
+        envelope.clear();
+        return failed;
+    }
+
+    private int commitBatch(List<MovementBaseType> batch, List<String> texts, int retries, CircuitBreaker breaker,
+            Consumer<MovementBaseType> notAttempted) {
+        if (breaker.isOpen()) {
+            // opened by another call while the batch was collected
+            batch.forEach(notAttempted);
+            return batch.size();
+        }
+        for (int attempt = 0; attempt <= retries && !breaker.isOpen(); attempt++) {
+            try (PooledSession pooled = sessionPool.borrowTransacted()) {
+                Session session = pooled.getSession();
+                MessageProducer producer = pooled.getExchangeProducer();
+                try {
+                    for (String text : texts) {
+                        TextMessage message = session.createTextMessage();
+                        message.setStringProperty("FUNCTION", ExchangeModuleMethod.SET_MOVEMENT_REPORT.value());
+                        message.setText(text);
+                        producer.send(message);
+                    }
+                    session.commit();
+                    breaker.onSuccess();
+                    aisIncoming.inc(batch.size());
+                    return 0;
+                } catch (JMSException | RuntimeException e) {
+                    LOG.warn("Rolling back {} positions, attempt {}: {}", batch.size(), attempt + 1, e.getMessage());
+                    pooled.invalidate();
+                    breaker.onFailure();
+                    rollbackQuietly(session);
+                }
+            } catch (JMSException e) {
+                LOG.warn("couldn't open transacted session: {}", e.getMessage());
+                breaker.onFailure();
+            }
+        }
+        // save them and try again in a scheduled thread
+        LOG.error("couldn't send {} positions", batch.size());
+        for (MovementBaseType movement : batch) {
+            aisService.addCachedMovement(movement);
+        }
+        return batch.size();
+    }
+
+    private static void rollbackQuietly(Session session) {
+        try {
+            session.rollback();
+        } catch (JMSException | RuntimeException e) {
+            LOG.debug("Rollback failed: {}", e.getMessage());
+        }
+    }
+
+    private String toMovementReportText(MovementBaseType movement, String pluginName, boolean cachedMarshalling) {
+        SetReportMovementType movementReport = getMovementReport(movement, pluginName);
+        if (cachedMarshalling) {
+            return MovementReportMarshaller.getDefault().marshal(movementReport, "AIS", Instant.now(), PluginType.OTHER, "AIS");
         }
+        return ExchangeModuleRequestMapper.createSetMovementReportRequest(movementReport, "AIS", null, Instant.now(),  PluginType.OTHER, "AIS", null);
     }
     
     public void sendToErrorQueueParsingError(String movement) {
-        try (Connection connection = connectionFactory.createConnection();
-                Session session = connection.createSession(false, 1);
-                MessageProducer producer = session.createProducer(errorQueue)) {
-            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+        CircuitBreaker breaker = sessionPool.getErrorBreaker();
+        if (!breaker.allowRequest()) {
+            LOG.debug("Error queue is unavailable, dropping parsing error");
+            return;
+        }
+        try (PooledSession pooled = sessionPool.borrow()) {
+            Session session = pooled.getSession();
+            MessageProducer producer = pooled.getErrorProducer();
 
             // emit
 
@@ -139,14 +523,57 @@ public class ExchangeService {
                 message_bytes.setStringProperty("type", "byte");
                 message_bytes.writeBytes(movement.getBytes());
                 producer.send(message_bytes);
+                breaker.onSuccess();
+            } catch (JMSException e) {
+                LOG.error("couldn't send parsing error");
+                pooled.invalidate();
+                breaker.onFailure();
             } catch (Exception e) {
                 LOG.info("//NOP: {}", e.getLocalizedMessage());
             }
         } catch (JMSException e) {
             LOG.error("couldn't send movement");
+            breaker.onFailure();
         }
     }
     
+    /**
+     * Sends each parse error as its own message on one session, with the number of times it was seen.
+     *
+     * @return the number of errors sent, the ones after it were not
+     */
+    public int sendParsingErrors(List<ParseError> errors) {
+        CircuitBreaker breaker = sessionPool.getErrorBreaker();
+        if (!breaker.allowRequest()) {
+            return 0;
+        }
+        int sent = 0;
+        try (PooledSession pooled = sessionPool.borrow()) {
+            Session session = pooled.getSession();
+            MessageProducer producer = pooled.getErrorProducer();
+            for (ParseError error : errors) {
+                BytesMessage message = session.createBytesMessage();
+                message.setStringProperty("source", "AIS");
+                message.setStringProperty("type", "byte");
+                message.setStringProperty("reason", error.getReason());
+                message.setLongProperty("occurrences", error.getOccurrences());
+                message.writeBytes(error.getSentence().getBytes());
+                try {
+                    producer.send(message);
+                } catch (JMSException e) {
+                    pooled.invalidate();
+                    throw e;
+                }
+                breaker.onSuccess();
+                sent++;
+            }
+        } catch (JMSException e) {
+            LOG.error("couldn't send {} parsing errors: {}", errors.size() - sent, e.getMessage());
+            breaker.onFailure();
+        }
+        return sent;
+    }
+
     private SetReportMovementType getMovementReport(MovementBaseType movement, String pluginName) {
         SetReportMovementType report = new SetReportMovementType();
         report.setTimestamp(new Date());
@@ -0,0 +1,133 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Mmsi numbers of fishing vessels from a fleet register export, for example the EU fleet register or the Asset module.
+ * A CSV file is read from its MMSI column (the first column if the header has none), a JSON file from its "mmsi" values.
+ * Instances are immutable, a new register is read when the file changes.
+ */
+public class FleetRegister {
+
+    public static final FleetRegister EMPTY = new FleetRegister(new MmsiSet());
+
+    private static final Logger LOG = LoggerFactory.getLogger(FleetRegister.class);
+    private static final int MMSI_MAX = 999999999;
+    private static final Pattern JSON_MMSI = Pattern.compile("\"mmsi\"\\s*:\\s*\"?(\\d+)\"?", Pattern.CASE_INSENSITIVE);
+
+    private final MmsiSet mmsis;
+    private final MmsiBloomFilter filter;
+
+    public FleetRegister(MmsiSet mmsis) {
+        this.mmsis = mmsis;
+        this.filter = new MmsiBloomFilter(mmsis.size());
+        for (int mmsi : mmsis.toArray()) {
+            filter.add(mmsi);
+        }
+    }
+
+    public static FleetRegister read(Path file) throws IOException {
+        MmsiSet mmsis = new MmsiSet();
+        if (file.getFileName().toString().toLowerCase().endsWith(".json")) {
+            readJson(file, mmsis);
+        } else {
+            readCsv(file, mmsis);
+        }
+        return new FleetRegister(mmsis);
+    }
+
+    public boolean contains(int mmsi) {
+        return filter.mightContain(mmsi) && mmsis.contains(mmsi);
+    }
+
+    public int size() {
+        return mmsis.size();
+    }
+
+    private static void readCsv(Path file, MmsiSet mmsis) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                return;
+            }
+            String separator = header.indexOf(';') >= 0 ? ";" : ",";
+            int column = findColumn(header.split(separator, -1), "MMSI");
+            if (column < 0) {
+                column = 0;
+                addMmsi(header.split(separator, -1)[0], mmsis);
+            }
+            String line;
+            int invalid = 0;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split(separator, -1);
+                if (values.length <= column || !addMmsi(values[column], mmsis)) {
+                    invalid++;
+                }
+            }
+            if (invalid > 0) {
+                LOG.debug("{} lines without a valid mmsi in {}", invalid, file);
+            }
+        }
+    }
+
+    private static void readJson(Path file, MmsiSet mmsis) throws IOException {
+        String json = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        Matcher matcher = JSON_MMSI.matcher(json);
+        while (matcher.find()) {
+            addMmsi(matcher.group(1), mmsis);
+        }
+    }
+
+    private static int findColumn(String[] header, String name) {
+        for (int i = 0; i < header.length; i++) {
+            if (unquote(header[i]).equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean addMmsi(String value, MmsiSet mmsis) {
+        String mmsi = unquote(value);
+        if (mmsi.isEmpty() || mmsi.length() > 9) {
+            return false;
+        }
+        try {
+            int number = Integer.parseInt(mmsi);
+            if (number <= 0 || number > MMSI_MAX) {
+                return false;
+            }
+            mmsis.add(number);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static String unquote(String value) {
+        String trimmed = value.trim();
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            return trimmed.substring(1, trimmed.length() - 1).trim();
+        }
+        return trimmed;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import javax.annotation.PostConstruct;
+import javax.ejb.DependsOn;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.inject.Inject;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import eu.europa.ec.fisheries.uvms.plugins.ais.StartupBean;
+
+/**
+ * Keeps the fleet register given by FLEET_REGISTER_FILE loaded, vessels in it are treated as fishing vessels
+ * from their first position regardless of the ship type they report.
+ */
+@Singleton
+@Startup
+@DependsOn({"StartupBean"})
+public class FleetRegisterService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FleetRegisterService.class);
+
+    @Inject
+    private StartupBean startUp;
+
+    private volatile FleetRegister register = FleetRegister.EMPTY;
+    private String loadedFile;
+    private long loadedLastModified;
+
+    @PostConstruct
+    public void init() {
+        reload();
+    }
+
+    @Schedule(minute = "*/30", hour = "*", persistent = false)
+    public void reload() {
+        String file = SettingsReader.getString(startUp, "FLEET_REGISTER_FILE", null);
+        if (file == null) {
+            if (loadedFile != null) {
+                LOG.info("Fleet register file removed from settings, clearing {} vessels", register.size());
+                register = FleetRegister.EMPTY;
+                loadedFile = null;
+            }
+            return;
+        }
+        try {
+            Path path = Paths.get(file);
+            long lastModified = Files.getLastModifiedTime(path).toMillis();
+            if (file.equals(loadedFile) && lastModified == loadedLastModified) {
+                return;
+            }
+            FleetRegister loaded = FleetRegister.read(path);
+            register = loaded;
+            loadedFile = file;
+            loadedLastModified = lastModified;
+            LOG.info("Loaded {} fishing vessels from fleet register {}", loaded.size(), path);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not load fleet register {}: {}", file, e.getMessage());
+        }
+    }
+
+    @Lock(LockType.READ)
+    public FleetRegister getRegister() {
+        return register;
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_fleetregister_size", absolute = true)
+    public int getFleetRegisterSize() {
+        return register.size();
+    }
+}
@@ -0,0 +1,394 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.DependsOn;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.inject.Inject;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import eu.europa.ec.fisheries.uvms.plugins.ais.StartupBean;
+
+/**
+ * Keeps one long lived connection and a pool of sessions with producers for the exchange and error queues.
+ * A session is used by one caller at a time, callers that find no idle session get a new one and at most
+ * JMS_POOL_SIZE sessions of each kind are kept when they are returned. A failing session is dropped, and when
+ * no session can be created on the connection it is replaced. Sessions are created outside of container
+ * transactions, so transacted sessions are committed by their user. The circuit breakers of the two queues are
+ * shared by all users of the pool.
+ */
+@Singleton
+@DependsOn({"StartupBean"})
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class JmsSessionPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmsSessionPool.class);
+
+    @Resource(mappedName = "java:/ConnectionFactory")
+    private ConnectionFactory connectionFactory;
+
+    @Resource(mappedName = "java:/jms/queue/UVMSExchangeEvent")
+    private Queue exchangeQueue;
+
+    @Resource(mappedName = "java:/jms/queue/UVMSPluginFailedReport")
+    private Queue errorQueue;
+
+    @Inject
+    private StartupBean startUp;
+
+    private final Deque<PooledSession> idle = new ConcurrentLinkedDeque<>();
+    private final Deque<PooledSession> idleTransacted = new ConcurrentLinkedDeque<>();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final Map<String, Queue> batchQueues = new ConcurrentHashMap<>();
+    private final Object connectionLock = new Object();
+    private volatile Connection connection;
+    private CircuitBreaker exchangeBreaker;
+    private CircuitBreaker errorBreaker;
+
+    @PostConstruct
+    public void init() {
+        int failureThreshold = SettingsReader.getInt(startUp, "BREAKER_FAILURE_THRESHOLD", 5);
+        int openMillis = SettingsReader.getInt(startUp, "BREAKER_OPEN_MS", 30000);
+        exchangeBreaker = new CircuitBreaker("exchange", failureThreshold, openMillis);
+        errorBreaker = new CircuitBreaker("error queue", failureThreshold, openMillis);
+    }
+
+    @Lock(LockType.READ)
+    public CircuitBreaker getExchangeBreaker() {
+        return exchangeBreaker;
+    }
+
+    @Lock(LockType.READ)
+    public CircuitBreaker getErrorBreaker() {
+        return errorBreaker;
+    }
+
+    /**
+     * @return a session for the caller's exclusive use, to be closed to return it to the pool
+     */
+    @Lock(LockType.READ)
+    public PooledSession borrow() throws JMSException {
+        return borrow(false);
+    }
+
+    /**
+     * @return a transacted session for the caller's exclusive use, to be closed to return it to the pool
+     */
+    @Lock(LockType.READ)
+    public PooledSession borrowTransacted() throws JMSException {
+        return borrow(true);
+    }
+
+    private PooledSession borrow(boolean transacted) throws JMSException {
+        Deque<PooledSession> sessions = transacted ? idleTransacted : idle;
+        PooledSession pooled;
+        while ((pooled = sessions.pollFirst()) != null) {
+            if (pooled.connection == connection && pooled.isHealthy()) {
+                return pooled;
+            }
+            pooled.closeQuietly();
+        }
+        Connection current = getConnection();
+        try {
+            return createSession(current, transacted);
+        } catch (JMSException | RuntimeException e) {
+            LOG.warn("Could not create jms session, reconnecting: {}", e.getMessage());
+            reconnect(current);
+            return createSession(getConnection(), transacted);
+        }
+    }
+
+    private PooledSession createSession(Connection current, boolean transacted) throws JMSException {
+        Session session = transacted
+                ? current.createSession(true, Session.SESSION_TRANSACTED)
+                : current.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        return new PooledSession(current, session, transacted);
+    }
+
+    // drops idle sessions that were closed underneath us, so callers don't find out on their next send
+    @Lock(LockType.READ)
+    @Schedule(minute = "*", hour = "*", persistent = false)
+    public void checkHealth() {
+        checkHealth(idle);
+        checkHealth(idleTransacted);
+    }
+
+    private void checkHealth(Deque<PooledSession> sessions) {
+        int count = sessions.size();
+        for (int i = 0; i < count; i++) {
+            PooledSession pooled = sessions.pollFirst();
+            if (pooled == null) {
+                return;
+            }
+            if (pooled.connection == connection && pooled.isHealthy()) {
+                sessions.addLast(pooled);
+            } else {
+                pooled.closeQuietly();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        for (Deque<PooledSession> sessions : Arrays.asList(idle, idleTransacted)) {
+            PooledSession pooled;
+            while ((pooled = sessions.pollFirst()) != null) {
+                pooled.closeQuietly();
+            }
+        }
+        synchronized (connectionLock) {
+            closeQuietly(connection);
+            connection = null;
+        }
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_jms_idle_sessions", absolute = true)
+    public int getIdleSessions() {
+        return idle.size() + idleTransacted.size();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_jms_reconnects", absolute = true)
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_exchange_breaker_state", absolute = true)
+    public int getExchangeBreakerState() {
+        return exchangeBreaker.getState().ordinal();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_exchange_breaker_opened", absolute = true)
+    public long getExchangeBreakerOpened() {
+        return exchangeBreaker.getOpened();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_exchange_breaker_half_opened", absolute = true)
+    public long getExchangeBreakerHalfOpened() {
+        return exchangeBreaker.getHalfOpened();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_exchange_breaker_closed", absolute = true)
+    public long getExchangeBreakerClosed() {
+        return exchangeBreaker.getClosed();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_exchange_breaker_rejected", absolute = true)
+    public long getExchangeBreakerRejected() {
+        return exchangeBreaker.getRejected();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_error_breaker_state", absolute = true)
+    public int getErrorBreakerState() {
+        return errorBreaker.getState().ordinal();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_error_breaker_opened", absolute = true)
+    public long getErrorBreakerOpened() {
+        return errorBreaker.getOpened();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_error_breaker_half_opened", absolute = true)
+    public long getErrorBreakerHalfOpened() {
+        return errorBreaker.getHalfOpened();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_error_breaker_closed", absolute = true)
+    public long getErrorBreakerClosed() {
+        return errorBreaker.getClosed();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_error_breaker_rejected", absolute = true)
+    public long getErrorBreakerRejected() {
+        return errorBreaker.getRejected();
+    }
+
+    private Queue getBatchQueue() throws JMSException {
+        String name = SettingsReader.getString(startUp, "PUBLISH_BATCH_QUEUE", "java:/jms/queue/UVMSExchangeMovementBatch");
+        Queue queue = batchQueues.get(name);
+        if (queue != null) {
+            return queue;
+        }
+        try {
+            queue = (Queue) new InitialContext().lookup(name);
+        } catch (NamingException | ClassCastException e) {
+            JMSException exception = new JMSException("Movement batch queue " + name + " not found");
+            exception.initCause(e);
+            throw exception;
+        }
+        batchQueues.put(name, queue);
+        return queue;
+    }
+
+    private void release(PooledSession pooled) {
+        int maxIdle = SettingsReader.getInt(startUp, "JMS_POOL_SIZE", 8);
+        Deque<PooledSession> sessions = pooled.transacted ? idleTransacted : idle;
+        if (pooled.broken || pooled.connection != connection || sessions.size() >= maxIdle) {
+            pooled.closeQuietly();
+        } else {
+            sessions.addFirst(pooled);
+        }
+    }
+
+    private Connection getConnection() throws JMSException {
+        Connection current = connection;
+        if (current != null) {
+            return current;
+        }
+        synchronized (connectionLock) {
+            if (connection == null) {
+                connection = connectionFactory.createConnection();
+            }
+            return connection;
+        }
+    }
+
+    private void reconnect(Connection failed) {
+        synchronized (connectionLock) {
+            if (connection == failed) {
+                connection = null;
+                reconnects.incrementAndGet();
+                closeQuietly(failed);
+            }
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            LOG.debug("Could not close {}: {}", closeable, e.getMessage());
+        }
+    }
+
+    /**
+     * A pooled session with its producers. Closing it returns it to the pool, unless it was invalidated.
+     */
+    public class PooledSession implements AutoCloseable {
+
+        private final Connection connection;
+        private final Session session;
+        private final boolean transacted;
+        private MessageProducer exchangeProducer;
+        private MessageProducer errorProducer;
+        private MessageProducer batchProducer;
+        private Queue batchQueue;
+        private volatile boolean broken;
+
+        private PooledSession(Connection connection, Session session, boolean transacted) {
+            this.connection = connection;
+            this.session = session;
+            this.transacted = transacted;
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        public MessageProducer getExchangeProducer() throws JMSException {
+            if (exchangeProducer == null) {
+                exchangeProducer = createProducer(exchangeQueue);
+            }
+            return exchangeProducer;
+        }
+
+        public MessageProducer getErrorProducer() throws JMSException {
+            if (errorProducer == null) {
+                errorProducer = createProducer(errorQueue);
+            }
+            return errorProducer;
+        }
+
+        /**
+         * @return producer for the queue named by PUBLISH_BATCH_QUEUE, read by a consumer that unpacks movement batches
+         */
+        public MessageProducer getBatchProducer() throws JMSException {
+            Queue queue = getBatchQueue();
+            if (batchProducer == null || batchQueue != queue) {
+                JmsSessionPool.closeQuietly(batchProducer);
+                batchProducer = createProducer(queue);
+                batchQueue = queue;
+            }
+            return batchProducer;
+        }
+
+        /**
+         * Marks the session as failed, it is closed instead of returned to the pool.
+         */
+        public void invalidate() {
+            broken = true;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+
+        private MessageProducer createProducer(Queue queue) throws JMSException {
+            MessageProducer producer = session.createProducer(queue);
+            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+            return producer;
+        }
+
+        private boolean isHealthy() {
+            try {
+                session.getTransacted();
+                return true;
+            } catch (JMSException | RuntimeException e) {
+                return false;
+            }
+        }
+
+        private void closeQuietly() {
+            JmsSessionPool.closeQuietly(session);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+/**
+ * Bloom filter over mmsi numbers. Most vessels are not in the filter and are rejected from a small bit array
+ * without probing the larger exact set.
+ */
+public class MmsiBloomFilter {
+
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int HASHES = 3;
+
+    private final long[] bits;
+    private final int mask;
+
+    public MmsiBloomFilter(int expectedSize) {
+        int bitCount = 64;
+        while (bitCount < expectedSize * BITS_PER_ENTRY && bitCount < (1 << 30)) {
+            bitCount <<= 1;
+        }
+        bits = new long[bitCount >>> 6];
+        mask = bitCount - 1;
+    }
+
+    public void add(int mmsi) {
+        int h1 = hash1(mmsi);
+        int h2 = hash2(mmsi);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(int mmsi) {
+        int h1 = hash1(mmsi);
+        int h2 = hash2(mmsi);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash1(int mmsi) {
+        int h = mmsi * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // odd, so the probes of one mmsi never collapse onto the same bit
+    private static int hash2(int mmsi) {
+        int h = mmsi * 0x85EBCA6B;
+        return (h ^ (h >>> 13)) | 1;
+    }
+}
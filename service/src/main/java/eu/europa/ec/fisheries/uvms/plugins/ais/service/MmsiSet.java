@@ -0,0 +1,179 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Set of mmsi numbers stored as primitive ints in an open addressing hash table.
+ * Reads are lock free, writes are serialized and a growing table is published by swapping the reference.
+ */
+public class MmsiSet {
+
+    private static final int EMPTY = -1;
+    private static final int REMOVED = -2;
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile AtomicIntegerArray table;
+    private volatile int size;
+    private volatile long modificationCount;
+    private int removed;
+
+    public MmsiSet() {
+        this(MIN_CAPACITY);
+    }
+
+    public MmsiSet(int expectedSize) {
+        table = newTable(capacityFor(expectedSize));
+    }
+
+    public boolean contains(int mmsi) {
+        if (mmsi < 0) {
+            return false;
+        }
+        AtomicIntegerArray t = table;
+        int mask = t.length() - 1;
+        int index = hash(mmsi) & mask;
+        while (true) {
+            int value = t.get(index);
+            if (value == mmsi) {
+                return true;
+            }
+            if (value == EMPTY) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    public synchronized boolean add(int mmsi) {
+        if (mmsi < 0) {
+            throw new IllegalArgumentException("Invalid mmsi: " + mmsi);
+        }
+        if (contains(mmsi)) {
+            return false;
+        }
+        if ((size + removed + 1) * 2 > table.length()) {
+            rehash(capacityFor(size + 1));
+        }
+        AtomicIntegerArray t = table;
+        int mask = t.length() - 1;
+        int index = hash(mmsi) & mask;
+        while (true) {
+            int value = t.get(index);
+            if (value == EMPTY || value == REMOVED) {
+                if (value == REMOVED) {
+                    removed--;
+                }
+                t.set(index, mmsi);
+                size++;
+                modificationCount++;
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    public synchronized boolean remove(int mmsi) {
+        AtomicIntegerArray t = table;
+        int mask = t.length() - 1;
+        int index = hash(mmsi) & mask;
+        while (true) {
+            int value = t.get(index);
+            if (value == mmsi) {
+                t.set(index, REMOVED);
+                size--;
+                removed++;
+                modificationCount++;
+                return true;
+            }
+            if (value == EMPTY) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return a counter that changes on every add, remove and clear that changed the set
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    public synchronized void clear() {
+        table = newTable(MIN_CAPACITY);
+        size = 0;
+        removed = 0;
+        modificationCount++;
+    }
+
+    public synchronized int[] toArray() {
+        int[] values = new int[size];
+        AtomicIntegerArray t = table;
+        int count = 0;
+        for (int i = 0; i < t.length(); i++) {
+            int value = t.get(i);
+            if (value >= 0) {
+                values[count++] = value;
+            }
+        }
+        return values;
+    }
+
+    private void rehash(int capacity) {
+        AtomicIntegerArray old = table;
+        AtomicIntegerArray t = newTable(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < old.length(); i++) {
+            int value = old.get(i);
+            if (value >= 0) {
+                int index = hash(value) & mask;
+                while (t.get(index) != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                t.set(index, value);
+            }
+        }
+        removed = 0;
+        table = t;
+    }
+
+    // keeps the load factor including removed slots below one half, so probing always ends on an empty slot
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 4) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static AtomicIntegerArray newTable(int capacity) {
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        return new AtomicIntegerArray(slots);
+    }
+
+    private static int hash(int mmsi) {
+        int h = mmsi * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Compact binary file of an {@link MmsiSet}: a header followed by the sorted mmsi numbers as ints.
+ * The file is written to a temporary file and moved in place, and memory mapped when read back.
+ */
+public class MmsiSetSnapshot {
+
+    private static final int MAGIC = 0x41495346; // "AISF"
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 3;
+
+    private MmsiSetSnapshot() {}
+
+    public static void write(MmsiSet set, Path file) throws IOException {
+        int[] mmsis = set.toArray();
+        Arrays.sort(mmsis);
+        ByteBuffer buffer = ByteBuffer.allocate((HEADER_INTS + mmsis.length) * Integer.BYTES);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(mmsis.length);
+        buffer.asIntBuffer().put(mmsis);
+        buffer.rewind();
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the number of mmsi numbers added to the set, 0 if there is no snapshot
+     */
+    public static int read(Path file, MmsiSet set) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IntBuffer ints = mapped.asIntBuffer();
+            if (ints.remaining() < HEADER_INTS || ints.get() != MAGIC || ints.get() != VERSION) {
+                throw new IOException("Not a known fishing vessel snapshot: " + file);
+            }
+            int count = ints.get();
+            if (count < 0 || count > ints.remaining()) {
+                throw new IOException("Truncated known fishing vessel snapshot: " + file);
+            }
+            for (int i = 0; i < count; i++) {
+                set.add(ints.get());
+            }
+            return count;
+        }
+    }
+}
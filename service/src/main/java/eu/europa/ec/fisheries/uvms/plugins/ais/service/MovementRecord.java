@@ -0,0 +1,171 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Date;
+import java.util.List;
+import eu.europa.ec.fisheries.schema.exchange.movement.asset.v1.AssetId;
+import eu.europa.ec.fisheries.schema.exchange.movement.asset.v1.AssetIdList;
+import eu.europa.ec.fisheries.schema.exchange.movement.asset.v1.AssetIdType;
+import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementBaseType;
+import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementPoint;
+import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementSourceType;
+
+/**
+ * Binary form of the movement fields set by the AIS parser, a bit mask of the fields present followed by their values.
+ */
+final class MovementRecord {
+
+    private static final int STATUS = 1;
+    private static final int MMSI = 1 << 1;
+    private static final int FLAG_STATE = 1 << 2;
+    private static final int SPEED = 1 << 3;
+    private static final int COURSE = 1 << 4;
+    private static final int POSITION_ACCURACY = 1 << 5;
+    private static final int POSITION = 1 << 6;
+    private static final int LATITUDE = 1 << 7;
+    private static final int LONGITUDE = 1 << 8;
+    private static final int TRUE_HEADING = 1 << 9;
+    private static final int POSITION_TIME = 1 << 10;
+    private static final int SOURCE = 1 << 11;
+    private static final int ASSET_ID = 1 << 12;
+
+    private MovementRecord() {}
+
+    static byte[] encode(MovementBaseType movement) {
+        MovementPoint position = movement.getPosition();
+        int fields = (movement.getStatus() != null ? STATUS : 0)
+                | (movement.getMmsi() != null ? MMSI : 0)
+                | (movement.getFlagState() != null ? FLAG_STATE : 0)
+                | (movement.getReportedSpeed() != null ? SPEED : 0)
+                | (movement.getReportedCourse() != null ? COURSE : 0)
+                | (movement.getAisPositionAccuracy() != null ? POSITION_ACCURACY : 0)
+                | (position != null ? POSITION : 0)
+                | (position != null && position.getLatitude() != null ? LATITUDE : 0)
+                | (position != null && position.getLongitude() != null ? LONGITUDE : 0)
+                | (movement.getTrueHeading() != null ? TRUE_HEADING : 0)
+                | (movement.getPositionTime() != null ? POSITION_TIME : 0)
+                | (movement.getSource() != null ? SOURCE : 0)
+                | (movement.getAssetId() != null ? ASSET_ID : 0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeShort(fields);
+            if ((fields & STATUS) != 0) {
+                out.writeUTF(movement.getStatus());
+            }
+            if ((fields & MMSI) != 0) {
+                out.writeUTF(movement.getMmsi());
+            }
+            if ((fields & FLAG_STATE) != 0) {
+                out.writeUTF(movement.getFlagState());
+            }
+            if ((fields & SPEED) != 0) {
+                out.writeDouble(movement.getReportedSpeed());
+            }
+            if ((fields & COURSE) != 0) {
+                out.writeDouble(movement.getReportedCourse());
+            }
+            if ((fields & POSITION_ACCURACY) != 0) {
+                out.writeShort(movement.getAisPositionAccuracy());
+            }
+            if ((fields & LATITUDE) != 0) {
+                out.writeDouble(position.getLatitude());
+            }
+            if ((fields & LONGITUDE) != 0) {
+                out.writeDouble(position.getLongitude());
+            }
+            if ((fields & TRUE_HEADING) != 0) {
+                out.writeInt(movement.getTrueHeading());
+            }
+            if ((fields & POSITION_TIME) != 0) {
+                out.writeLong(movement.getPositionTime().getTime());
+            }
+            if ((fields & SOURCE) != 0) {
+                out.writeUTF(movement.getSource().name());
+            }
+            if ((fields & ASSET_ID) != 0) {
+                List<AssetIdList> ids = movement.getAssetId().getAssetIdList();
+                out.writeShort(ids.size());
+                for (AssetIdList id : ids) {
+                    out.writeUTF(id.getIdType() == null ? "" : id.getIdType().name());
+                    out.writeUTF(id.getValue() == null ? "" : id.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static MovementBaseType decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        int fields = in.readUnsignedShort();
+        MovementBaseType movement = new MovementBaseType();
+        if ((fields & STATUS) != 0) {
+            movement.setStatus(in.readUTF());
+        }
+        if ((fields & MMSI) != 0) {
+            movement.setMmsi(in.readUTF());
+        }
+        if ((fields & FLAG_STATE) != 0) {
+            movement.setFlagState(in.readUTF());
+        }
+        if ((fields & SPEED) != 0) {
+            movement.setReportedSpeed(in.readDouble());
+        }
+        if ((fields & COURSE) != 0) {
+            movement.setReportedCourse(in.readDouble());
+        }
+        if ((fields & POSITION_ACCURACY) != 0) {
+            movement.setAisPositionAccuracy(in.readShort());
+        }
+        if ((fields & POSITION) != 0) {
+            MovementPoint position = new MovementPoint();
+            if ((fields & LATITUDE) != 0) {
+                position.setLatitude(in.readDouble());
+            }
+            if ((fields & LONGITUDE) != 0) {
+                position.setLongitude(in.readDouble());
+            }
+            movement.setPosition(position);
+        }
+        if ((fields & TRUE_HEADING) != 0) {
+            movement.setTrueHeading(in.readInt());
+        }
+        if ((fields & POSITION_TIME) != 0) {
+            movement.setPositionTime(new Date(in.readLong()));
+        }
+        if ((fields & SOURCE) != 0) {
+            movement.setSource(MovementSourceType.valueOf(in.readUTF()));
+        }
+        if ((fields & ASSET_ID) != 0) {
+            AssetId assetId = new AssetId();
+            int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                AssetIdList id = new AssetIdList();
+                String type = in.readUTF();
+                String value = in.readUTF();
+                id.setIdType(type.isEmpty() ? null : AssetIdType.valueOf(type));
+                id.setValue(value.isEmpty() ? null : value);
+                assetId.getAssetIdList().add(id);
+            }
+            movement.setAssetId(assetId);
+        }
+        return movement;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+/**
+ * Envelope for several SetMovementReportRequest documents sent as one message:
+ * <pre>
+ * &lt;batch:movementReportBatch xmlns:batch="urn:eu.europa.ec.fisheries.uvms.plugins.ais:batch:v1" size="2"&gt;
+ *     &lt;ns2:SetMovementReportRequest ...&gt;...&lt;/ns2:SetMovementReportRequest&gt;
+ *     &lt;ns2:SetMovementReportRequest ...&gt;...&lt;/ns2:SetMovementReportRequest&gt;
+ * &lt;/batch:movementReportBatch&gt;
+ * </pre>
+ * Each child keeps its own namespace declarations and the envelope declares no default namespace, so a consumer
+ * can unmarshal every child as a single request.
+ */
+public class MovementReportBatch {
+
+    public static final String NAMESPACE = "urn:eu.europa.ec.fisheries.uvms.plugins.ais:batch:v1";
+    public static final String FUNCTION = "SET_MOVEMENT_REPORT_BATCH";
+    public static final String SIZE_PROPERTY = "BATCH_SIZE";
+
+    private final StringBuilder reports = new StringBuilder();
+    private int size;
+
+    /**
+     * @param report a marshalled SetMovementReportRequest, its xml declaration is left out
+     */
+    public void add(String report) {
+        int start = 0;
+        if (report.startsWith("<?xml")) {
+            start = report.indexOf("?>") + 2;
+        }
+        reports.append(report, start, report.length());
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String toXml() {
+        StringBuilder xml = new StringBuilder(reports.length() + 128);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+        xml.append("<batch:movementReportBatch xmlns:batch=\"").append(NAMESPACE).append("\" size=\"").append(size).append("\">");
+        xml.append(reports);
+        xml.append("</batch:movementReportBatch>");
+        return xml.toString();
+    }
+
+    public void clear() {
+        reports.setLength(0);
+        size = 0;
+    }
+}
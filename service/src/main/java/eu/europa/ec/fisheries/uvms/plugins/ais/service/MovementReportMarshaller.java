@@ -0,0 +1,133 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.Date;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import eu.europa.ec.fisheries.schema.exchange.module.v1.ExchangeModuleMethod;
+import eu.europa.ec.fisheries.schema.exchange.module.v1.SetMovementReportRequest;
+import eu.europa.ec.fisheries.schema.exchange.movement.v1.SetReportMovementType;
+import eu.europa.ec.fisheries.schema.exchange.plugin.types.v1.PluginType;
+import eu.europa.ec.fisheries.uvms.exchange.model.mapper.ExchangeModuleRequestMapper;
+
+/**
+ * Marshals SetMovementReportRequests with one cached JAXBContext and a Marshaller, request and buffer per thread,
+ * instead of the context lookup and new Marshaller per message of ExchangeModuleRequestMapper.
+ * The first report is marshalled both ways and the cached path is only used when the documents are identical,
+ * otherwise every report keeps going through the mapper.
+ */
+public class MovementReportMarshaller {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MovementReportMarshaller.class);
+
+    private static final MovementReportMarshaller DEFAULT = new MovementReportMarshaller();
+
+    private enum Mode { UNCHECKED, CACHED, MAPPER }
+
+    private volatile Mode mode = Mode.UNCHECKED;
+    private volatile JAXBContext context;
+    private volatile boolean formatted;
+    private final ThreadLocal<Target> targets = new ThreadLocal<>();
+
+    public static MovementReportMarshaller getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Same arguments and result as {@link ExchangeModuleRequestMapper#createSetMovementReportRequest}
+     * without flux data flow and on value.
+     */
+    public String marshal(SetReportMovementType report, String username, Instant date, PluginType pluginType, String senderOrReceiver) {
+        if (mode == Mode.CACHED) {
+            try {
+                return marshalCached(report, username, date, pluginType, senderOrReceiver, formatted);
+            } catch (JAXBException e) {
+                throw new IllegalStateException("Could not marshal movement report", e);
+            }
+        }
+        String expected = ExchangeModuleRequestMapper.createSetMovementReportRequest(report, username, null, date, pluginType, senderOrReceiver, null);
+        if (mode == Mode.UNCHECKED) {
+            check(expected, report, username, date, pluginType, senderOrReceiver);
+        }
+        return expected;
+    }
+
+    boolean isCached() {
+        return mode == Mode.CACHED;
+    }
+
+    private synchronized void check(String expected, SetReportMovementType report, String username, Instant date,
+            PluginType pluginType, String senderOrReceiver) {
+        if (mode != Mode.UNCHECKED) {
+            return;
+        }
+        try {
+            context = JAXBContext.newInstance(SetMovementReportRequest.class);
+            for (boolean candidate : new boolean[] {true, false}) {
+                targets.remove();
+                if (expected.equals(marshalCached(report, username, date, pluginType, senderOrReceiver, candidate))) {
+                    formatted = candidate;
+                    mode = Mode.CACHED;
+                    LOG.info("Using cached marshalling for movement reports");
+                    return;
+                }
+            }
+            LOG.warn("Cached marshalling differs from the exchange model mapper, movement reports use the mapper");
+        } catch (JAXBException | RuntimeException e) {
+            LOG.warn("Cached marshalling not available, movement reports use the mapper: {}", e.getMessage());
+        }
+        targets.remove();
+        mode = Mode.MAPPER;
+    }
+
+    private String marshalCached(SetReportMovementType report, String username, Instant date, PluginType pluginType,
+            String senderOrReceiver, boolean formattedOutput) throws JAXBException {
+        Target target = targets.get();
+        if (target == null) {
+            target = new Target(context, formattedOutput);
+            targets.set(target);
+        }
+        SetMovementReportRequest request = target.request;
+        request.setUsername(username);
+        request.setRequest(report);
+        request.setDate(Date.from(date));
+        request.setPluginType(pluginType);
+        request.setSenderOrReceiver(senderOrReceiver);
+        try {
+            target.buffer.getBuffer().setLength(0);
+            target.marshaller.marshal(request, target.buffer);
+            return target.buffer.toString();
+        } finally {
+            // the report belongs to the caller
+            request.setRequest(null);
+        }
+    }
+
+    private static class Target {
+
+        private final Marshaller marshaller;
+        private final SetMovementReportRequest request = new SetMovementReportRequest();
+        private final StringWriter buffer = new StringWriter(4096);
+
+        private Target(JAXBContext context, boolean formatted) throws JAXBException {
+            marshaller = context.createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, formatted);
+            request.setMethod(ExchangeModuleMethod.SET_MOVEMENT_REPORT);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Joins the fragments of multipart AIVDM/AIVDO sentences into one payload. Fragments are keyed by sequence id,
+ * radio channel and source (the tag block source, or the talker when there is none) and kept in a fixed size open
+ * addressing table with the fragment characters in one byte array, so they may arrive across polls and interleaved.
+ * Incomplete messages are evicted after a timeout, and the oldest one when the table is full. Sentences that don't
+ * start with a tag block or '!' are already payloads and are passed on unchanged.
+ */
+public class NmeaReassembler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NmeaReassembler.class);
+
+    private static final int MAX_FRAGMENTS = 9;
+    // no NMEA sentence is longer than 82 characters, so neither is a fragment payload
+    private static final int FRAGMENT_BYTES = 82;
+    private static final int FREE = -1;
+
+    private final long timeoutMillis;
+    private final LongSupplier clock;
+    private final int[] table;
+    private final int mask;
+
+    // per message, indexed by entry
+    private final long[] keys;
+    private final long[] createdAt;
+    private final int[] fragmentCount;
+    private final int[] received;
+    private final char[] fillBits;
+    private final byte[] fragments;
+    private final int[] fragmentLengths;
+    private final int[] freeEntries;
+    private int freeCount;
+
+    private long dropped;
+    private long checksumErrors;
+    private long malformed;
+
+    public NmeaReassembler(int maxPending, long timeoutMillis) {
+        this(maxPending, timeoutMillis, System::currentTimeMillis);
+    }
+
+    NmeaReassembler(int maxPending, long timeoutMillis, LongSupplier clock) {
+        int entries = Math.max(1, maxPending);
+        int capacity = 4;
+        while (capacity < entries * 2) {
+            capacity <<= 1;
+        }
+        this.timeoutMillis = timeoutMillis;
+        this.clock = clock;
+        table = new int[capacity];
+        Arrays.fill(table, FREE);
+        mask = capacity - 1;
+        keys = new long[entries];
+        createdAt = new long[entries];
+        fragmentCount = new int[entries];
+        received = new int[entries];
+        fillBits = new char[entries];
+        fragments = new byte[entries * MAX_FRAGMENTS * FRAGMENT_BYTES];
+        fragmentLengths = new int[entries * MAX_FRAGMENTS];
+        freeEntries = new int[entries];
+        for (int i = 0; i < entries; i++) {
+            freeEntries[i] = entries - 1 - i;
+        }
+        freeCount = entries;
+    }
+
+    /**
+     * @return the payloads of the complete messages, each followed by a comma and its fill bits
+     */
+    public synchronized List<String> reassemble(List<String> sentences) {
+        evictExpired();
+        List<String> payloads = new ArrayList<>(sentences.size());
+        for (String sentence : sentences) {
+            String payload = add(sentence);
+            if (payload != null) {
+                payloads.add(payload);
+            }
+        }
+        return payloads;
+    }
+
+    private String add(String sentence) {
+        if (sentence == null || sentence.isEmpty()) {
+            return null;
+        }
+        int start = 0;
+        int source = 0;
+        if (sentence.charAt(0) == '\\') {
+            int end = sentence.indexOf('\\', 1);
+            if (end < 0) {
+                malformed++;
+                return null;
+            }
+            source = tagBlockSource(sentence, end);
+            start = end + 1;
+        }
+        if (start >= sentence.length() || sentence.charAt(start) != '!') {
+            return start == 0 ? sentence : rejectMalformed(sentence);
+        }
+        int star = sentence.indexOf('*', start);
+        if (star < 0 || star + 2 >= sentence.length()) {
+            return rejectMalformed(sentence);
+        }
+        int expected = hex(sentence.charAt(star + 1)) << 4 | hex(sentence.charAt(star + 2));
+        int checksum = 0;
+        for (int i = start + 1; i < star; i++) {
+            checksum ^= sentence.charAt(i);
+        }
+        if (expected < 0 || checksum != expected) {
+            checksumErrors++;
+            LOG.debug("Checksum mismatch in {}", sentence);
+            return null;
+        }
+
+        // !AIVDM,count,number,sequence id,channel,payload,fill bits*checksum
+        int talkerEnd = sentence.indexOf(',', start);
+        int countEnd = talkerEnd < 0 ? -1 : sentence.indexOf(',', talkerEnd + 1);
+        int numberEnd = countEnd < 0 ? -1 : sentence.indexOf(',', countEnd + 1);
+        int sequenceEnd = numberEnd < 0 ? -1 : sentence.indexOf(',', numberEnd + 1);
+        int channelEnd = sequenceEnd < 0 ? -1 : sentence.indexOf(',', sequenceEnd + 1);
+        int payloadEnd = channelEnd < 0 ? -1 : sentence.indexOf(',', channelEnd + 1);
+        if (payloadEnd < 0 || payloadEnd > star) {
+            return rejectMalformed(sentence);
+        }
+        int count = digit(sentence, talkerEnd + 1, countEnd);
+        int number = digit(sentence, countEnd + 1, numberEnd);
+        int sequenceId = sequenceEnd == numberEnd + 1 ? 0 : digit(sentence, numberEnd + 1, sequenceEnd) + 1;
+        char channel = channelEnd == sequenceEnd + 1 ? ' ' : sentence.charAt(sequenceEnd + 1);
+        int payloadLength = payloadEnd - channelEnd - 1;
+        if (count < 1 || number < 1 || number > count || sequenceId < 0 || payloadLength > FRAGMENT_BYTES) {
+            return rejectMalformed(sentence);
+        }
+        if (count == 1) {
+            return sentence.substring(channelEnd + 1, star);
+        }
+        if (source == 0) {
+            source = hash(sentence, start + 1, talkerEnd);
+        }
+        long key = (long) source << 32 | sequenceId << 8 | channel;
+        int entry = findOrCreate(key, count);
+        int fragment = entry * MAX_FRAGMENTS + number - 1;
+        int offset = fragment * FRAGMENT_BYTES;
+        for (int i = 0; i < payloadLength; i++) {
+            fragments[offset + i] = (byte) sentence.charAt(channelEnd + 1 + i);
+        }
+        fragmentLengths[fragment] = payloadLength;
+        received[entry] |= 1 << (number - 1);
+        if (number == count) {
+            fillBits[entry] = payloadEnd + 1 < star ? sentence.charAt(payloadEnd + 1) : '0';
+        }
+        if (received[entry] != (1 << count) - 1) {
+            return null;
+        }
+        String payload = join(entry);
+        remove(key);
+        return payload;
+    }
+
+    // one String per message, built straight from the stored fragment bytes
+    private String join(int entry) {
+        int count = fragmentCount[entry];
+        int length = 2;
+        for (int i = 0; i < count; i++) {
+            length += fragmentLengths[entry * MAX_FRAGMENTS + i];
+        }
+        char[] payload = new char[length];
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            int fragment = entry * MAX_FRAGMENTS + i;
+            int offset = fragment * FRAGMENT_BYTES;
+            for (int j = 0; j < fragmentLengths[fragment]; j++) {
+                payload[position++] = (char) fragments[offset + j];
+            }
+        }
+        payload[position++] = ',';
+        payload[position] = fillBits[entry];
+        return new String(payload);
+    }
+
+    private int findOrCreate(long key, int count) {
+        int index = indexOf(key);
+        if (table[index] != FREE) {
+            int entry = table[index];
+            if (fragmentCount[entry] != count) {
+                // the sequence id was reused for another message before this one was complete
+                dropped++;
+                fragmentCount[entry] = count;
+                received[entry] = 0;
+                createdAt[entry] = clock.getAsLong();
+            }
+            return entry;
+        }
+        if (freeCount == 0) {
+            evictOldest();
+            index = indexOf(key);
+        }
+        int entry = freeEntries[--freeCount];
+        keys[entry] = key;
+        createdAt[entry] = clock.getAsLong();
+        fragmentCount[entry] = count;
+        received[entry] = 0;
+        table[index] = entry;
+        return entry;
+    }
+
+    // the slot holding the key, or the free slot where it belongs
+    private int indexOf(long key) {
+        int index = hash(key) & mask;
+        while (table[index] != FREE && keys[table[index]] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    // backward shift deletion keeps every probe sequence free of holes
+    private void remove(long key) {
+        int index = indexOf(key);
+        int entry = table[index];
+        if (entry == FREE) {
+            return;
+        }
+        freeEntries[freeCount++] = entry;
+        table[index] = FREE;
+        int next = (index + 1) & mask;
+        while (table[next] != FREE) {
+            int home = hash(keys[table[next]]) & mask;
+            if (((next - home) & mask) >= ((next - index) & mask)) {
+                table[index] = table[next];
+                table[next] = FREE;
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    private void evictExpired() {
+        long now = clock.getAsLong();
+        for (int i = 0; i < keys.length; i++) {
+            if (isPending(i) && now - createdAt[i] >= timeoutMillis) {
+                dropped++;
+                remove(keys[i]);
+            }
+        }
+    }
+
+    private void evictOldest() {
+        int oldest = -1;
+        for (int i = 0; i < keys.length; i++) {
+            if (isPending(i) && (oldest < 0 || createdAt[i] < createdAt[oldest])) {
+                oldest = i;
+            }
+        }
+        dropped++;
+        remove(keys[oldest]);
+    }
+
+    private boolean isPending(int entry) {
+        int index = indexOf(keys[entry]);
+        return table[index] == entry;
+    }
+
+    private String rejectMalformed(String sentence) {
+        malformed++;
+        LOG.debug("Malformed sentence {}", sentence);
+        return null;
+    }
+
+    // value of the s: field in a tag block like \s:station1,c:1577836800*5C\
+    private static int tagBlockSource(String sentence, int end) {
+        int fieldStart = 1;
+        while (fieldStart < end) {
+            int fieldEnd = fieldStart;
+            while (fieldEnd < end && sentence.charAt(fieldEnd) != ',' && sentence.charAt(fieldEnd) != '*') {
+                fieldEnd++;
+            }
+            if (fieldEnd - fieldStart > 2 && sentence.charAt(fieldStart) == 's' && sentence.charAt(fieldStart + 1) == ':') {
+                return hash(sentence, fieldStart + 2, fieldEnd);
+            }
+            if (fieldEnd < end && sentence.charAt(fieldEnd) == '*') {
+                break;
+            }
+            fieldStart = fieldEnd + 1;
+        }
+        return 0;
+    }
+
+    private static int digit(String sentence, int from, int to) {
+        if (to - from != 1) {
+            return -1;
+        }
+        char c = sentence.charAt(from);
+        return c >= '0' && c <= '9' ? c - '0' : -1;
+    }
+
+    private static int hex(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -256;
+    }
+
+    // 32 bit FNV-1a, never 0 so a source is told apart from a missing one
+    private static int hash(String text, int from, int to) {
+        int hash = 0x811c9dc5;
+        for (int i = from; i < to; i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public synchronized int getPending() {
+        return keys.length - freeCount;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized long getChecksumErrors() {
+        return checksumErrors;
+    }
+
+    public synchronized long getMalformed() {
+        return malformed;
+    }
+}
@@ -0,0 +1,314 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.PostConstruct;
+import javax.ejb.DependsOn;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.inject.Inject;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import eu.europa.ec.fisheries.uvms.plugins.ais.StartupBean;
+import eu.europa.ec.fisheries.uvms.plugins.ais.mapper.AisParser;
+
+/**
+ * Collects the sentences that could not be parsed, counting repeats of the same payload and reason, and sends them
+ * to the error queue in batches of PARSE_ERROR_BATCH_SIZE, at most PARSE_ERROR_MAX_PER_MINUTE a minute. Rejected
+ * sentences are counted per validation result, stack traces of decode failures are logged once per exception class
+ * every PARSE_ERROR_TRACE_INTERVAL_MS. Message types the plugin does not decode are only counted, they are valid
+ * traffic and not sent to the error queue.
+ */
+@Singleton
+@DependsOn({"StartupBean"})
+public class ParseErrorReporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParseErrorReporter.class);
+
+    private static final long MINUTE = 60000;
+
+    @Inject
+    private StartupBean startUp;
+
+    @Inject
+    private ExchangeService exchangeService;
+
+    private final Map<ErrorKey, ParseError> pending = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> lastStackTrace = new ConcurrentHashMap<>();
+    private final AtomicLong reported = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLongArray rejected = new AtomicLongArray(AisParser.Result.values().length);
+    private final AtomicLong decodeFailures = new AtomicLong();
+    private final Object flushLock = new Object();
+    private long windowStart;
+    private int sentInWindow;
+    // read once per flush, the report path does not go through the settings
+    private volatile int maxPending = 10000;
+    private volatile long traceInterval = 60000;
+
+    @PostConstruct
+    public void init() {
+        readLimits();
+    }
+
+    private void readLimits() {
+        maxPending = SettingsReader.getInt(startUp, "PARSE_ERROR_MAX_PENDING", 10000);
+        traceInterval = SettingsReader.getInt(startUp, "PARSE_ERROR_TRACE_INTERVAL_MS", 60000);
+    }
+
+    /**
+     * Reports a sentence that failed validation, counted per result.
+     */
+    @Lock(LockType.READ)
+    public void report(String sentence, AisParser.Result result) {
+        rejected.incrementAndGet(result.ordinal());
+        LOG.debug("Rejected AIS message {}: {}", sentence, result);
+        if (result != AisParser.Result.UNSUPPORTED_TYPE) {
+            add(sentence, result.name());
+        }
+    }
+
+    /**
+     * Reports a sentence that passed validation but could not be decoded.
+     */
+    @Lock(LockType.READ)
+    public void report(String sentence, Throwable error) {
+        decodeFailures.incrementAndGet();
+        logSampled(sentence, error);
+        add(sentence, error.getClass().getSimpleName());
+    }
+
+    private void add(String sentence, String reason) {
+        reported.incrementAndGet();
+        int limit = maxPending;
+        // counted inside compute, so an entry flush has removed is never counted
+        pending.compute(new ErrorKey(hash(sentence), reason), (key, parseError) -> {
+            if (parseError == null) {
+                if (pending.size() >= limit) {
+                    dropped.incrementAndGet();
+                    return null;
+                }
+                parseError = new ParseError(sentence, reason);
+            }
+            parseError.occurrences.incrementAndGet();
+            return parseError;
+        });
+    }
+
+    @Lock(LockType.READ)
+    @Schedule(second = "*/10", minute = "*", hour = "*", persistent = false)
+    public void flush() {
+        readLimits();
+        if (pending.isEmpty()) {
+            return;
+        }
+        synchronized (flushLock) {
+            long now = System.currentTimeMillis();
+            if (now - windowStart >= MINUTE) {
+                windowStart = now;
+                sentInWindow = 0;
+            }
+            int budget = SettingsReader.getInt(startUp, "PARSE_ERROR_MAX_PER_MINUTE", 600) - sentInWindow;
+            int batchSize = Math.max(1, SettingsReader.getInt(startUp, "PARSE_ERROR_BATCH_SIZE", 100));
+            int distinct = pending.size();
+            List<ParseError> batch = new ArrayList<>(Math.min(batchSize, Math.max(0, budget)));
+            Iterator<Map.Entry<ErrorKey, ParseError>> iterator = pending.entrySet().iterator();
+            while (budget > 0 && iterator.hasNext()) {
+                Map.Entry<ErrorKey, ParseError> entry = iterator.next();
+                // the entry is counted under the same lock, so its occurrences no longer change once it is removed
+                if (pending.remove(entry.getKey(), entry.getValue())) {
+                    batch.add(entry.getValue());
+                    budget--;
+                }
+                if (!batch.isEmpty() && (batch.size() == batchSize || budget == 0 || !iterator.hasNext())) {
+                    int count = exchangeService.sendParsingErrors(batch);
+                    sentInWindow += count;
+                    sent.addAndGet(count);
+                    if (count < batch.size()) {
+                        // the error queue is not available, keep the rest for the next flush
+                        requeue(batch.subList(count, batch.size()));
+                        break;
+                    }
+                    batch.clear();
+                }
+            }
+            if (!pending.isEmpty()) {
+                LOG.warn("{} distinct parse errors, {} held back by the rate cap or an unavailable error queue", distinct, pending.size());
+            }
+        }
+    }
+
+    private void requeue(List<ParseError> errors) {
+        for (ParseError parseError : errors) {
+            pending.merge(new ErrorKey(hash(parseError.sentence), parseError.reason), parseError, (current, unsent) -> {
+                current.occurrences.addAndGet(unsent.occurrences.get());
+                return current;
+            });
+        }
+    }
+
+    // the first failure of a kind is logged with its stack trace, repeats only at debug level
+    private void logSampled(String sentence, Throwable error) {
+        long interval = traceInterval;
+        AtomicLong last = lastStackTrace.computeIfAbsent(error.getClass().getName(), r -> new AtomicLong(Long.MIN_VALUE));
+        long now = System.currentTimeMillis();
+        long previous = last.get();
+        if ((previous == Long.MIN_VALUE || now - previous >= interval) && last.compareAndSet(previous, now)) {
+            LOG.error("Could not parse AIS message {}", sentence, error);
+            return;
+        }
+        LOG.debug("Could not parse AIS message {}: {}", sentence, error.toString());
+    }
+
+    // 64 bit FNV-1a over the characters of the sentence
+    static long hash(String sentence) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < sentence.length(); i++) {
+            hash ^= sentence.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_parse_errors", absolute = true)
+    public long getReported() {
+        return reported.get();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_parse_errors_pending", absolute = true)
+    public int getPending() {
+        return pending.size();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_parse_errors_sent", absolute = true)
+    public long getSent() {
+        return sent.get();
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_parse_errors_dropped", absolute = true)
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Lock(LockType.READ)
+    public long getRejected(AisParser.Result result) {
+        return rejected.get(result.ordinal());
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_parse_errors_empty", absolute = true)
+    public long getRejectedEmpty() {
+        return getRejected(AisParser.Result.EMPTY);
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_parse_errors_unsupported_type", absolute = true)
+    public long getRejectedUnsupportedType() {
+        return getRejected(AisParser.Result.UNSUPPORTED_TYPE);
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_parse_errors_invalid_character", absolute = true)
+    public long getRejectedInvalidCharacter() {
+        return getRejected(AisParser.Result.INVALID_CHARACTER);
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_parse_errors_truncated", absolute = true)
+    public long getRejectedTruncated() {
+        return getRejected(AisParser.Result.TRUNCATED);
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_parse_errors_unsupported_part", absolute = true)
+    public long getRejectedUnsupportedPart() {
+        return getRejected(AisParser.Result.UNSUPPORTED_PART);
+    }
+
+    @Lock(LockType.READ)
+    @Gauge(unit = MetricUnits.NONE, name = "ais_parse_errors_decode_failed", absolute = true)
+    public long getDecodeFailures() {
+        return decodeFailures.get();
+    }
+
+    private static final class ErrorKey {
+
+        private final long hash;
+        private final String reason;
+
+        private ErrorKey(long hash, String reason) {
+            this.hash = hash;
+            this.reason = reason;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ErrorKey)) {
+                return false;
+            }
+            ErrorKey other = (ErrorKey) o;
+            return hash == other.hash && Objects.equals(reason, other.reason);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash) * 31 + Objects.hashCode(reason);
+        }
+    }
+
+    /**
+     * A sentence that could not be parsed, with the number of times it was seen since the last flush.
+     */
+    public static class ParseError {
+
+        private final String sentence;
+        private final String reason;
+        private final AtomicLong occurrences = new AtomicLong();
+
+        ParseError(String sentence, String reason) {
+            this.sentence = sentence;
+            this.reason = reason;
+        }
+
+        public String getSentence() {
+            return sentence;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public long getOccurrences() {
+            return occurrences.get();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.util.Objects;
+import eu.europa.ec.fisheries.uvms.plugins.ais.StartupBean;
+
+/**
+ * Keep/drop rules evaluated on the mmsi of a sentence before it is decoded.
+ * Reads FILTER_MMSI_MIN, FILTER_MMSI_MAX and FILTER_FLAG_STATES (comma separated ISO3 codes, empty allows all).
+ * The rules only apply to position reports of vessels that are not known fishing vessels,
+ * static reports are always decoded so fishing vessels can still be recognized.
+ */
+public class PreDecodeFilter {
+
+    private static final int MMSI_MAX = 999999999;
+
+    private static volatile PreDecodeFilter current = new PreDecodeFilter(0, MMSI_MAX, null);
+
+    private final int mmsiMin;
+    private final int mmsiMax;
+    private final String flagStates;
+    private final boolean[] allowedMids;
+
+    public PreDecodeFilter(int mmsiMin, int mmsiMax, String flagStates) {
+        this.mmsiMin = mmsiMin;
+        this.mmsiMax = mmsiMax;
+        this.flagStates = flagStates;
+        this.allowedMids = buildAllowedMids(flagStates);
+    }
+
+    /**
+     * @return the filter for the current settings, only rebuilt when one of the settings has changed
+     */
+    public static PreDecodeFilter fromSettings(StartupBean startUp) {
+        int mmsiMin = SettingsReader.getInt(startUp, "FILTER_MMSI_MIN", 0);
+        int mmsiMax = SettingsReader.getInt(startUp, "FILTER_MMSI_MAX", MMSI_MAX);
+        String flagStates = SettingsReader.getString(startUp, "FILTER_FLAG_STATES", null);
+        PreDecodeFilter filter = current;
+        if (filter.mmsiMin != mmsiMin || filter.mmsiMax != mmsiMax || !Objects.equals(filter.flagStates, flagStates)) {
+            filter = new PreDecodeFilter(mmsiMin, mmsiMax, flagStates);
+            current = filter;
+        }
+        return filter;
+    }
+
+    public boolean accept(int mmsi) {
+        if (mmsi < mmsiMin || mmsi > mmsiMax) {
+            return false;
+        }
+        if (allowedMids == null) {
+            return true;
+        }
+        int mid = Conversion.getMid(mmsi);
+        return mid >= 0 && allowedMids[mid];
+    }
+
+    private static boolean[] buildAllowedMids(String flagStates) {
+        if (flagStates == null || flagStates.trim().isEmpty()) {
+            return null;
+        }
+        boolean[] mids = new boolean[1000];
+        for (String flagState : flagStates.split(",")) {
+            for (Integer mid : Conversion.getMidsForAnsi3(flagState.trim().toUpperCase())) {
+                mids[mid] = true;
+            }
+        }
+        return mids;
+    }
+}
@@ -12,10 +12,13 @@ copy of the GNU General Public License along with the IFDM Suite. If not, see <h
 package eu.europa.ec.fisheries.uvms.plugins.ais.service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
 import javax.ejb.Stateless;
 import javax.inject.Inject;
 import org.slf4j.Logger;
@@ -23,6 +26,8 @@ import org.slf4j.LoggerFactory;
 import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementBaseType;
 import eu.europa.ec.fisheries.uvms.asset.client.model.AssetDTO;
 import eu.europa.ec.fisheries.uvms.plugins.ais.StartupBean;
+import eu.europa.ec.fisheries.uvms.plugins.ais.mapper.AisBitBuffer;
+import eu.europa.ec.fisheries.uvms.plugins.ais.mapper.AisMessage;
 import eu.europa.ec.fisheries.uvms.plugins.ais.mapper.AisParser;
 import eu.europa.ec.fisheries.uvms.plugins.ais.mapper.AisParser.AisType;
 
@@ -37,69 +42,265 @@ public class ProcessService {
     @Inject
     private ExchangeService exchangeService;
 
-    public ProcessResult processMessages(List<String> sentences, Set<String> knownFishingVessels) {
+    @Inject
+    private FleetRegisterService fleetRegisterService;
+
+    @Inject
+    private ParseErrorReporter parseErrorReporter;
+
+    @Inject
+    private DecodePool decodePool;
+
+    public ProcessResult processMessages(List<String> sentences, MmsiSet knownFishingVessels) {
         long start = System.currentTimeMillis();
 
-        List<MovementBaseType> movements = new ArrayList<>();
-        Map<String, MovementBaseType> downsampledMovements = new HashMap<>();
-        Map<String, AssetDTO> downsampledAssets = new HashMap<>();
-        // collect
-        for (String sentence : sentences) {
-            try {
-                String binary = symbolToBinary(sentence);
-                AisType aisType = AisParser.parseAisType(binary);
-                if (aisType.isPositionReport()) {
-                    MovementBaseType movement = AisParser.parsePositionReport(binary, aisType);
-                    if (movement != null) {
-                        if (knownFishingVessels.contains(movement.getMmsi())) {
-                            movements.add(movement);
-                        } else {
-                            downsampledMovements.put(movement.getMmsi(), movement);
-                        }
+        if (!(sentences instanceof RandomAccess)) {
+            sentences = new ArrayList<>(sentences);
+        }
+        long[] positionKeys = sortPositionKeys(sentences);
+        BatchInput input = new BatchInput(sentences, knownFishingVessels, fleetRegisterService.getRegister(),
+                PreDecodeFilter.fromSettings(startUp), findSupersededPositions(positionKeys, sentences.size()));
+        Batch batch = decodeStaticReports(input);
+        int parallelThreshold = SettingsReader.getInt(startUp, "PARALLEL_DECODE_THRESHOLD", 20000);
+        if (sentences.size() >= parallelThreshold) {
+            int chunkSize = SettingsReader.getInt(startUp, "PARALLEL_DECODE_CHUNK", 5000);
+            batch.merge(decodeInChunks(input, Math.max(1, chunkSize)));
+        } else {
+            batch.merge(decode(input, 0, sentences.size()));
+        }
+        batch.skipped -= recoverSupersededPositions(positionKeys, input, batch);
+        exchangeService.sendToExchange(batch.movements, startUp.getRegisterClassName());
+        LOG.info("Processing time: {} for {} sentences, {} skipped before decoding", (System.currentTimeMillis() - start), sentences.size(), batch.skipped);
+        return new ProcessResult(batch.downsampledMovements, batch.downsampledAssets);
+    }
+
+    /*
+     * Static reports and the ship type of type 19 positions are handled before any position is decoded,
+     * so every position of the batch is classified with the ship types reported in it, whichever chunk it is in.
+     * This is the one pass over every sentence, so empty payloads and unknown types are reported here.
+     */
+    private Batch decodeStaticReports(BatchInput input) {
+        Batch batch = new Batch();
+        for (String sentence : input.sentences) {
+            AisType aisType = AisParser.parseAisType(AisBitBuffer.peekMessageType(sentence));
+            if (aisType.isStaticReport()) {
+                processSentence(sentence, input, batch);
+            } else if (aisType == AisType.TYPE19 && AisParser.validate(sentence) == AisParser.Result.OK) {
+                // parse errors of type 19 are reported when the position is decoded
+                AisMessage message = AisParser.decode(new AisBitBuffer(sentence));
+                addFishingVessels(message.getMmsi(), AisParser.parseShipType(message), input.knownFishingVessels);
+            } else if (aisType == AisType.UNKNOWN) {
+                parseErrorReporter.report(sentence, AisParser.validate(sentence));
+            }
+        }
+        return batch;
+    }
+
+    /*
+     * Large batches, typically the backlog after a reconnect, are split in chunks decoded on the decode pool.
+     * The calling thread decodes the last chunk itself, results are merged in sentence order.
+     */
+    private Batch decodeInChunks(BatchInput input, int chunkSize) {
+        int size = input.sentences.size();
+        List<CompletableFuture<Batch>> chunks = new ArrayList<>();
+        int from = 0;
+        for (; size - from > chunkSize; from += chunkSize) {
+            int chunkFrom = from;
+            chunks.add(CompletableFuture.supplyAsync(() -> decode(input, chunkFrom, chunkFrom + chunkSize), decodePool.getExecutor()));
+        }
+        Batch last = decode(input, from, size);
+        Batch batch = new Batch();
+        for (CompletableFuture<Batch> chunk : chunks) {
+            batch.merge(chunk.join());
+        }
+        batch.merge(last);
+        return batch;
+    }
+
+    // decodes the positions, static reports are already done by decodeStaticReports
+    private Batch decode(BatchInput input, int from, int to) {
+        Batch batch = new Batch();
+        for (int index = from; index < to; index++) {
+            String sentence = input.sentences.get(index);
+            if (!isPositionReport(sentence)) {
+                continue;
+            }
+            int mmsi = AisBitBuffer.peekMmsi(sentence);
+            if (mmsi >= 0 && !input.isFishingVessel(mmsi)
+                    && (input.superseded.get(index) || !input.filter.accept(mmsi))) {
+                batch.skipped++;
+            } else {
+                processSentence(sentence, input, batch);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * @return true if the sentence gave a position
+     */
+    private boolean processSentence(String sentence, BatchInput input, Batch batch) {
+        AisType aisType = AisParser.parseAisType(AisBitBuffer.peekMessageType(sentence));
+        if (!aisType.isPositionReport() && !aisType.isStaticReport()) {
+            return false;
+        }
+        // malformed payloads are rejected here, decoding a valid one doesn't throw
+        AisParser.Result result = AisParser.validate(sentence);
+        if (result != AisParser.Result.OK) {
+            parseErrorReporter.report(sentence, result);
+            return false;
+        }
+        try {
+            AisBitBuffer payload = new AisBitBuffer(sentence);
+            if (aisType.isPositionReport()) {
+                AisMessage message = AisParser.decode(payload);
+                MovementBaseType movement = AisParser.parsePositionReport(message);
+                if (movement != null) {
+                    if (input.isFishingVessel(message.getMmsi())) {
+                        batch.movements.add(movement);
+                    } else {
+                        batch.downsampledMovements.put(movement.getMmsi(), movement);
                     }
-                } else if (aisType.isStaticReport()) {
-                    AssetDTO asset = AisParser.parseStaticReport(binary, aisType);
-                    downsampledAssets.put(asset.getMmsi(), asset);
-                    addFishingVessels(asset, knownFishingVessels);
+                    return true;
+                }
+            } else if (aisType.isStaticReport()) {
+                AisMessage message = AisParser.decode(payload);
+                AssetDTO asset = AisParser.parseStaticReport(message);
+                if (asset != null) {
+                    batch.downsampledAssets.merge(asset.getMmsi(), asset, AssetAccumulator::merge);
+                    addFishingVessels(message.getMmsi(), asset.getVesselType(), input.knownFishingVessels);
+                }
+            }
+        } catch (RuntimeException e) {
+            parseErrorReporter.report(sentence, e);
+        }
+        return false;
+    }
+
+    private boolean isPositionReport(String sentence) {
+        return AisParser.parseAisType(AisBitBuffer.peekMessageType(sentence)).isPositionReport();
+    }
+
+    /*
+     * (mmsi, index) pairs of the position reports in the batch, sorted so that the positions
+     * of a vessel are next to each other in the order they were received.
+     */
+    private long[] sortPositionKeys(List<String> sentences) {
+        long[] keys = new long[sentences.size()];
+        int count = 0;
+        int index = 0;
+        for (String sentence : sentences) {
+            if (isPositionReport(sentence)) {
+                int mmsi = AisBitBuffer.peekMmsi(sentence);
+                if (mmsi >= 0) {
+                    keys[count++] = ((long) mmsi << 32) | index;
                 }
-            } catch (Exception e) {
-                exchangeService.sendToErrorQueueParsingError(sentence);
-                LOG.error("Could not parse AIS message {}", sentence, e);
             }
+            index++;
         }
-        exchangeService.sendToExchange(movements, startUp.getRegisterClassName());
-        LOG.info("Processing time: {} for {} sentences", (System.currentTimeMillis() - start), sentences.size());
-        return new ProcessResult(downsampledMovements, downsampledAssets);
+        Arrays.sort(keys, 0, count);
+        return Arrays.copyOf(keys, count);
     }
 
-    private void addFishingVessels(AssetDTO asset, Set<String> knownFishingVessels) {
-        if (asset.getVesselType() != null && asset.getVesselType().equals("Fishing")) {
-            knownFishingVessels.add(asset.getMmsi());
-        } else if (knownFishingVessels.contains(asset.getMmsi()) && asset.getVesselType() != null) {
-            LOG.debug("Removing mmsi {} as fishing vessel, is now {}", asset.getMmsi(), asset.getVesselType());
-            knownFishingVessels.remove(asset.getMmsi());
+    /*
+     * Only the last position of a vessel in a batch survives downsampling, so earlier positions
+     * of the same mmsi don't need to be decoded unless the vessel is a known fishing vessel.
+     */
+    private BitSet findSupersededPositions(long[] positionKeys, int size) {
+        BitSet superseded = new BitSet(size);
+        for (int i = 0; i < positionKeys.length - 1; i++) {
+            if ((positionKeys[i] >>> 32) == (positionKeys[i + 1] >>> 32)) {
+                superseded.set((int) positionKeys[i]);
+            }
         }
+        return superseded;
     }
 
-    private String symbolToBinary(String symbolString) {
-        try {
-            StringBuilder sb = new StringBuilder();
-            switch (symbolString.charAt(0)) {
-                case '1': // message id 1
-                case '2': // message id 2
-                case '3': // message id 3
-                case '5': // message id 5
-                case 'B': // message id 18
-                case 'H': // message id 24
-                    for (int i = 0; i < symbolString.length(); i++) {
-                        sb.append(Conversion.getBinaryForSymbol(symbolString.charAt(i)));
+    /*
+     * The last position of a vessel may not give a movement (position not available, or a broken payload).
+     * Its skipped positions are then decoded backwards until one does, like they would have been without skipping.
+     */
+    private int recoverSupersededPositions(long[] positionKeys, BatchInput input, Batch batch) {
+        int decoded = 0;
+        int last = positionKeys.length - 1;
+        while (last >= 0) {
+            int mmsi = (int) (positionKeys[last] >>> 32);
+            int first = last;
+            while (first > 0 && (int) (positionKeys[first - 1] >>> 32) == mmsi) {
+                first--;
+            }
+            if (first < last && !input.isFishingVessel(mmsi) && input.filter.accept(mmsi)
+                    && !batch.downsampledMovements.containsKey(String.valueOf(mmsi))) {
+                for (int i = last - 1; i >= first; i--) {
+                    decoded++;
+                    if (processSentence(input.sentences.get((int) positionKeys[i]), input, batch)) {
+                        break;
                     }
-                    return sb.toString();
-                default:
+                }
+            }
+            last = first - 1;
+        }
+        return decoded;
+    }
+
+    private void addFishingVessels(int mmsi, String vesselType, MmsiSet knownFishingVessels) {
+        if (vesselType != null && vesselType.equals("Fishing")) {
+            knownFishingVessels.add(mmsi);
+        } else if (knownFishingVessels.contains(mmsi) && vesselType != null) {
+            LOG.debug("Removing mmsi {} as fishing vessel, is now {}", mmsi, vesselType);
+            knownFishingVessels.remove(mmsi);
+        }
+    }
+
+    // shared, read only input of one processMessages call
+    private static final class BatchInput {
+
+        private final List<String> sentences;
+        private final MmsiSet knownFishingVessels;
+        private final FleetRegister fleetRegister;
+        private final PreDecodeFilter filter;
+        private final BitSet superseded;
+
+        private BatchInput(List<String> sentences, MmsiSet knownFishingVessels, FleetRegister fleetRegister, PreDecodeFilter filter, BitSet superseded) {
+            this.sentences = sentences;
+            this.knownFishingVessels = knownFishingVessels;
+            this.fleetRegister = fleetRegister;
+            this.filter = filter;
+            this.superseded = superseded;
+        }
+
+        // vessels in the fleet register count as fishing whatever ship type they report
+        private boolean isFishingVessel(int mmsi) {
+            return fleetRegister.contains(mmsi) || knownFishingVessels.contains(mmsi);
+        }
+    }
+
+    // result of decoding the whole batch or a chunk of it
+    private static final class Batch {
+
+        private final List<MovementBaseType> movements = new ArrayList<>();
+        private final Map<String, MovementBaseType> downsampledMovements = new HashMap<>();
+        private final Map<String, AssetDTO> downsampledAssets = new HashMap<>();
+        private int skipped;
+
+        // merges the result of the chunk following this one, the latest position time wins and assets are merged field by field
+        private void merge(Batch next) {
+            movements.addAll(next.movements);
+            for (MovementBaseType movement : next.downsampledMovements.values()) {
+                downsampledMovements.merge(movement.getMmsi(), movement, Batch::latest);
+            }
+            for (AssetDTO asset : next.downsampledAssets.values()) {
+                downsampledAssets.merge(asset.getMmsi(), asset, AssetAccumulator::merge);
+            }
+            skipped += next.skipped;
+        }
+
+        private static MovementBaseType latest(MovementBaseType current, MovementBaseType next) {
+            if (current.getPositionTime() != null && next.getPositionTime() != null
+                    && next.getPositionTime().before(current.getPositionTime())) {
+                return current;
             }
-        } catch (Exception e) {
-            LOG.info("Failed to parse {}", symbolString, e);
+            return next;
         }
-        return null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,349 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementBaseType;
+
+/**
+ * Append only spool of movements that could not be sent, kept in memory mapped segment files.
+ * Each segment starts with a header holding how far it has been acknowledged, followed by records of
+ * length, crc and a {@link MovementRecord}. Movements are read back in the order they were appended and a
+ * segment is deleted once all its records are acknowledged. When the segments exceed maxBytes the oldest
+ * one is dropped. A record torn by a crash fails its crc and ends the segment when it is opened again.
+ */
+public class ResendSpool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResendSpool.class);
+
+    private static final int MAGIC = 0x41495352; // "AISR"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int ACK_OFFSET = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final String PREFIX = "resend-";
+    private static final String SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private long nextSequence;
+    private long pending;
+    private long dropped;
+
+    public ResendSpool(Path directory, int segmentBytes, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = Math.max(segmentBytes, HEADER_BYTES + RECORD_HEADER_BYTES + 1024);
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        open();
+    }
+
+    public synchronized void append(MovementBaseType movement) {
+        byte[] record = MovementRecord.encode(movement);
+        int size = RECORD_HEADER_BYTES + record.length;
+        try {
+            Segment tail = segments.peekLast();
+            if (tail == null || tail.buffer.capacity() - tail.writePosition < size) {
+                if (size > segmentBytes - HEADER_BYTES) {
+                    throw new IOException("Record of " + size + " bytes does not fit in a segment");
+                }
+                tail = createSegment();
+            }
+            crc.reset();
+            crc.update(record, 0, record.length);
+            tail.buffer.position(tail.writePosition);
+            tail.buffer.putInt(record.length).putInt((int) crc.getValue()).put(record);
+            tail.writePosition += size;
+            tail.pending++;
+            pending++;
+            dropOverflow();
+        } catch (IOException e) {
+            LOG.error("Could not spool movement {} for resend: {}", movement.getMmsi(), e.getMessage());
+            dropped++;
+        }
+    }
+
+    /**
+     * Reads up to max movements from the oldest segment with movements left, without acknowledging them.
+     */
+    public synchronized Replay next(int max) {
+        for (Segment segment : segments) {
+            if (segment.readPosition == segment.writePosition) {
+                continue;
+            }
+            List<MovementBaseType> movements = new ArrayList<>(Math.min(max, segment.pending));
+            // starts[i] and recordsBefore[i] are the position and record count of the i-th movement, after unreadable records before it
+            int[] starts = new int[Math.min(max, segment.pending) + 1];
+            int[] recordsBefore = new int[starts.length];
+            int position = segment.readPosition;
+            int records = 0;
+            while (position < segment.writePosition && movements.size() < max) {
+                starts[movements.size()] = position;
+                recordsBefore[movements.size()] = records;
+                int length = segment.buffer.getInt(position);
+                byte[] record = new byte[length];
+                segment.buffer.position(position + RECORD_HEADER_BYTES);
+                segment.buffer.get(record);
+                position += RECORD_HEADER_BYTES + length;
+                records++;
+                try {
+                    movements.add(MovementRecord.decode(record));
+                } catch (IOException | RuntimeException e) {
+                    LOG.warn("Skipping unreadable spooled movement in {}: {}", segment.file, e.getMessage());
+                    dropped++;
+                }
+            }
+            return new Replay(segment, position, records, movements, starts, recordsBefore);
+        }
+        return new Replay(null, 0, 0, Collections.emptyList(), new int[1], new int[1]);
+    }
+
+    /**
+     * Marks the movements of the replay as sent, a segment that is done with is deleted.
+     */
+    public synchronized void acknowledge(Replay replay) {
+        acknowledge(replay, replay.movements.size());
+    }
+
+    /**
+     * Marks the first count movements of the replay as sent, the others are read again by the next replay.
+     */
+    public synchronized void acknowledge(Replay replay, int count) {
+        Segment segment = replay.segment;
+        if (segment == null || !segments.contains(segment)) {
+            return;
+        }
+        boolean all = count >= replay.movements.size();
+        int end = all ? replay.end : replay.starts[count];
+        int records = all ? replay.records : replay.recordsBefore[count];
+        if (records == 0) {
+            return;
+        }
+        segment.readPosition = end;
+        segment.buffer.putInt(ACK_OFFSET, end);
+        segment.buffer.force();
+        segment.pending -= records;
+        pending -= records;
+        if (segment.readPosition == segment.writePosition && segment != segments.peekLast()) {
+            segments.remove(segment);
+            delete(segment);
+        }
+    }
+
+    public synchronized long getPending() {
+        return pending;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized long getSizeBytes() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.buffer.capacity();
+        }
+        return size;
+    }
+
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+            closeQuietly(segment);
+        }
+        segments.clear();
+    }
+
+    private void open() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long sequence;
+            try {
+                sequence = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            Segment segment = openSegment(file);
+            if (segment == null) {
+                continue;
+            }
+            if (segment.pending == 0) {
+                delete(segment);
+                continue;
+            }
+            segments.addLast(segment);
+            pending += segment.pending;
+        }
+        if (pending > 0) {
+            LOG.info("Found {} spooled movements to resend in {}", pending, directory);
+        }
+    }
+
+    private Segment openSegment(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+        MappedByteBuffer buffer = segment.buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            LOG.warn("Deleting unknown resend segment {}", file);
+            delete(segment);
+            return null;
+        }
+        int position = HEADER_BYTES;
+        int acknowledged = buffer.getInt(ACK_OFFSET);
+        int records = 0;
+        int unacknowledged = 0;
+        byte[] record = new byte[0];
+        while (position + RECORD_HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > buffer.capacity() - position - RECORD_HEADER_BYTES) {
+                break;
+            }
+            if (record.length < length) {
+                record = new byte[length];
+            }
+            buffer.position(position + RECORD_HEADER_BYTES);
+            buffer.get(record, 0, length);
+            crc.reset();
+            crc.update(record, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                LOG.warn("Torn record at {} in resend segment {}", position, file);
+                break;
+            }
+            if (position >= acknowledged) {
+                unacknowledged++;
+            }
+            position += RECORD_HEADER_BYTES + length;
+            records++;
+        }
+        segment.writePosition = position;
+        if (acknowledged < HEADER_BYTES || acknowledged > position) {
+            segment.readPosition = HEADER_BYTES;
+            segment.pending = records;
+        } else {
+            segment.readPosition = acknowledged;
+            segment.pending = unacknowledged;
+        }
+        return segment;
+    }
+
+    private Segment createSegment() throws IOException {
+        Path file = directory.resolve(String.format("%s%019d%s", PREFIX, nextSequence++, SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        segment.buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(ACK_OFFSET, HEADER_BYTES);
+        segment.writePosition = HEADER_BYTES;
+        segment.readPosition = HEADER_BYTES;
+        Segment tail = segments.peekLast();
+        if (tail != null && tail.readPosition == tail.writePosition) {
+            segments.removeLast();
+            delete(tail);
+        }
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private void dropOverflow() {
+        while (segments.size() > 1 && getSizeBytes() > maxBytes) {
+            Segment oldest = segments.removeFirst();
+            LOG.warn("Resend spool is full, dropping {} movements in {}", oldest.pending, oldest.file);
+            dropped += oldest.pending;
+            pending -= oldest.pending;
+            delete(oldest);
+        }
+    }
+
+    private static void delete(Segment segment) {
+        closeQuietly(segment);
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            LOG.warn("Could not delete resend segment {}: {}", segment.file, e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            LOG.debug("Could not close {}: {}", segment.file, e.getMessage());
+        }
+    }
+
+    private static class Segment {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition;
+        private int pending;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Movements read from the spool, to be acknowledged once they were handed to exchange again.
+     */
+    public static class Replay {
+
+        private final Segment segment;
+        private final int end;
+        private final int records;
+        private final List<MovementBaseType> movements;
+        private final int[] starts;
+        private final int[] recordsBefore;
+
+        private Replay(Segment segment, int end, int records, List<MovementBaseType> movements, int[] starts, int[] recordsBefore) {
+            this.segment = segment;
+            this.end = end;
+            this.records = records;
+            this.movements = movements;
+            this.starts = starts;
+            this.recordsBefore = recordsBefore;
+        }
+
+        public List<MovementBaseType> getMovements() {
+            return movements;
+        }
+
+        public boolean isEmpty() {
+            return records == 0;
+        }
+    }
+}
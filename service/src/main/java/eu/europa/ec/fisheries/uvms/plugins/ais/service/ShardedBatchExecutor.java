@@ -0,0 +1,107 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import eu.europa.ec.fisheries.uvms.plugins.ais.mapper.AisBitBuffer;
+
+/**
+ * Routes sentences to lanes by mmsi. Every lane runs one batch at a time, so the sentences of a vessel
+ * are decoded and published in the order they were received while the lanes run in parallel.
+ */
+public class ShardedBatchExecutor {
+
+    private final BoundedBatchExecutor[] lanes;
+
+    public ShardedBatchExecutor(Function<List<String>, CompletableFuture<?>> starter, int laneCount, int maxPending) {
+        lanes = new BoundedBatchExecutor[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new BoundedBatchExecutor(starter, 1, Math.max(1, maxPending / lanes.length));
+        }
+    }
+
+    public void submit(List<String> sentences) {
+        if (lanes.length == 1) {
+            lanes[0].submit(sentences);
+            return;
+        }
+        List<List<String>> parts = new ArrayList<>(lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            parts.add(new ArrayList<>(sentences.size() / lanes.length + 16));
+        }
+        for (String sentence : sentences) {
+            parts.get(laneFor(AisBitBuffer.peekMmsi(sentence), lanes.length)).add(sentence);
+        }
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i].submit(parts.get(i));
+        }
+    }
+
+    /**
+     * @return the number of pending sentences dropped from all lanes
+     */
+    public int discardPending() {
+        int discarded = 0;
+        for (BoundedBatchExecutor lane : lanes) {
+            discarded += lane.discardPending();
+        }
+        return discarded;
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    public int getInFlight() {
+        int inFlight = 0;
+        for (BoundedBatchExecutor lane : lanes) {
+            inFlight += lane.getInFlight();
+        }
+        return inFlight;
+    }
+
+    public int getPending() {
+        int pending = 0;
+        for (BoundedBatchExecutor lane : lanes) {
+            pending += lane.getPending();
+        }
+        return pending;
+    }
+
+    public long getMerged() {
+        long merged = 0;
+        for (BoundedBatchExecutor lane : lanes) {
+            merged += lane.getMerged();
+        }
+        return merged;
+    }
+
+    public long getDropped() {
+        long dropped = 0;
+        for (BoundedBatchExecutor lane : lanes) {
+            dropped += lane.getDropped();
+        }
+        return dropped;
+    }
+
+    // sentences without a readable mmsi all go to the first lane
+    static int laneFor(int mmsi, int laneCount) {
+        if (mmsi < 0) {
+            return 0;
+        }
+        int h = mmsi * 0x9E3779B9;
+        return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % laneCount;
+    }
+}
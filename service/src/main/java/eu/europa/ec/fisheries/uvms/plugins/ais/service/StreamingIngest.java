@@ -0,0 +1,105 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drains the AIS connection continuously on its own thread and hands the sentences on in micro batches.
+ * A batch is handed on when it is full, or when its oldest sentence has waited for the linger time.
+ */
+public class StreamingIngest implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingIngest.class);
+
+    private final Supplier<List<String>> source;
+    private final Consumer<List<String>> sink;
+    private final int batchSize;
+    private final long lingerMillis;
+    private final long pollMillis;
+
+    private volatile boolean running = true;
+    private List<String> pending = new ArrayList<>();
+    private long pendingSince;
+
+    public StreamingIngest(Supplier<List<String>> source, Consumer<List<String>> sink, int batchSize, long lingerMillis, long pollMillis) {
+        this.source = source;
+        this.sink = sink;
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerMillis = lingerMillis;
+        this.pollMillis = pollMillis;
+    }
+
+    @Override
+    public void run() {
+        LOG.info("Streaming ingest started, batch size {}, linger {} ms", batchSize, lingerMillis);
+        while (running) {
+            try {
+                if (!drain(System.currentTimeMillis())) {
+                    Thread.sleep(pollMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (RuntimeException e) {
+                LOG.error("Streaming ingest failed: {}", e.getMessage(), e);
+            }
+        }
+        if (!pending.isEmpty()) {
+            sink.accept(pending);
+            pending = new ArrayList<>();
+        }
+        LOG.info("Streaming ingest stopped");
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Polls the source once and hands on the batches that are full or have lingered long enough.
+     *
+     * @return true if the source had sentences
+     */
+    boolean drain(long now) {
+        List<String> polled = source.get();
+        boolean received = polled != null && !polled.isEmpty();
+        if (received) {
+            if (pending.isEmpty()) {
+                pendingSince = now;
+            }
+            pending.addAll(polled);
+        }
+        if (pending.size() >= batchSize) {
+            int full = pending.size() - pending.size() % batchSize;
+            for (int i = 0; i < full; i += batchSize) {
+                sink.accept(new ArrayList<>(pending.subList(i, i + batchSize)));
+            }
+            pending = new ArrayList<>(pending.subList(full, pending.size()));
+            pendingSince = now;
+        }
+        if (!pending.isEmpty() && now - pendingSince >= lingerMillis) {
+            sink.accept(pending);
+            pending = new ArrayList<>();
+        }
+        return received;
+    }
+}
@@ -0,0 +1,41 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.mapper;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class AisBitBufferTest {
+
+    @Test
+    public void unsignedFieldsTest() {
+        AisBitBuffer payload = new AisBitBuffer("15RTgt0PAso;90TKcjM8h6g208CQ,0*4A");
+        assertThat(payload.getBitLength(), is(168));
+        assertThat(payload.getMessageType(), is(1));
+        assertThat(payload.getUnsigned(8, 30), is(371798000));
+        assertThat(payload.getUnsigned(128, 9), is(215));
+    }
+
+    @Test
+    public void signedFieldsTest() {
+        AisBitBuffer payload = new AisBitBuffer("15RTgt0PAso;90TKcjM8h6g208CQ,0*4A");
+        assertThat(payload.getSigned(61, 28), is(-74037230));
+        assertThat(payload.getSigned(89, 27), is(29028980));
+    }
+
+    @Test
+    public void sixBitTextTest() {
+        AisBitBuffer payload = new AisBitBuffer("H3uHE`058du=DpA>0L5=@P4lp00");
+        assertThat(payload.getString(40, 120), is("ARKOSUNDS GASTHAMN"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void readPastPayloadTest() {
+        AisBitBuffer payload = new AisBitBuffer("H42O55i18tMET00000000000000");
+        payload.getUnsigned(160, 8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCharacterTest() {
+        new AisBitBuffer("15RTgt0PAso;90TKcjM8h6g208CQ\\");
+    }
+}
@@ -0,0 +1,74 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.mapper;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+import eu.europa.ec.fisheries.uvms.plugins.ais.constants.AisField;
+
+public class AisParserTest {
+
+    @Test
+    public void validPayloadsTest() {
+        assertThat(AisParser.validate("15RTgt0PAso;90TKcjM8h6g208CQ,0*4A"), is(AisParser.Result.OK));
+        assertThat(AisParser.validate("H42O55i18tMET00000000000000,2*6D"), is(AisParser.Result.OK));
+        assertThat(AisParser.validate("H42O55lti4hhhilD3nink000?050,0*40"), is(AisParser.Result.OK));
+        assertThat(AisParser.decode(new AisBitBuffer("H42O55lti4hhhilD3nink000?050,0*40")).getMmsi(), is(271041815));
+    }
+
+    @Test
+    public void malformedPayloadsTest() {
+        assertThat(AisParser.validate(""), is(AisParser.Result.EMPTY));
+        assertThat(AisParser.validate(",0*4A"), is(AisParser.Result.EMPTY));
+        assertThat(AisParser.validate("!5RTgt0PAso;90TKcjM8h6g208CQ,0*4A"), is(AisParser.Result.INVALID_CHARACTER));
+        assertThat(AisParser.validate("15RTgt0PAso;90TKcjM8h6g2!8CQ,0*4A"), is(AisParser.Result.INVALID_CHARACTER));
+        assertThat(AisParser.validate("85RTgt0PAso;90TKcjM8h6g208CQ,0*4A"), is(AisParser.Result.UNSUPPORTED_TYPE));
+        assertThat(AisParser.validate("15RTgt0PAso;90TKcjM8,0*4A"), is(AisParser.Result.TRUNCATED));
+        assertThat(AisParser.validate("H42O55lti4hhhilD3ni,0*40"), is(AisParser.Result.TRUNCATED));
+        assertThat(AisParser.validate("H42O5"), is(AisParser.Result.TRUNCATED));
+        assertThat(AisParser.validate("H42O558i18tMET00000000000000"), is(AisParser.Result.UNSUPPORTED_PART));
+    }
+
+    @Test
+    public void shortType24IsNotDecodedTest() {
+        AisBitBuffer payload = new AisBitBuffer("H42O5");
+        assertThat(AisMessageLayout.forPayload(payload) == null, is(true));
+        assertThat(AisParser.decode(payload) == null, is(true));
+    }
+
+    @Test
+    public void longRangeCourseNotAvailableTest() {
+        AisMessage available = AisParser.decode(new AisBitBuffer(longRangePosition(90)));
+        assertThat(available.getDouble(AisField.COURSE_OVER_GROUND), is(90.0));
+
+        AisMessage notAvailable = AisParser.decode(new AisBitBuffer(longRangePosition(511)));
+        assertThat(notAvailable.getDouble(AisField.COURSE_OVER_GROUND), nullValue());
+        assertThat(AisParser.parsePositionReport(notAvailable).getReportedCourse(), nullValue());
+    }
+
+    // type 27 payload for mmsi 271041815 at 10E 10N doing 5 knots
+    private static String longRangePosition(int course) {
+        StringBuilder bits = new StringBuilder();
+        appendBits(bits, 27, 6);
+        appendBits(bits, 0, 2);
+        appendBits(bits, 271041815, 30);
+        appendBits(bits, 0, 6);
+        appendBits(bits, 6000, 18);
+        appendBits(bits, 6000, 17);
+        appendBits(bits, 5, 6);
+        appendBits(bits, course, 9);
+        appendBits(bits, 0, 2);
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < bits.length(); i += 6) {
+            int value = Integer.parseInt(bits.substring(i, i + 6), 2);
+            payload.append((char) (value < 40 ? value + 48 : value + 56));
+        }
+        return payload.append(",0").toString();
+    }
+
+    private static void appendBits(StringBuilder bits, int value, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            bits.append((value >>> i) & 1);
+        }
+    }
+}
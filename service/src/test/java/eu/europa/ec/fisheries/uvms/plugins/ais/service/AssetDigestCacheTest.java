@@ -0,0 +1,64 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+import eu.europa.ec.fisheries.uvms.asset.client.model.AssetDTO;
+
+public class AssetDigestCacheTest {
+
+    @Test
+    public void unchangedAssetTest() {
+        AssetDigestCache cache = new AssetDigestCache();
+        AssetDTO asset = asset("271041815", "PROGUY", "TC6163");
+        assertThat(cache.isUnchanged(asset), is(false));
+
+        cache.record(asset);
+        AssetDTO again = asset("271041815", "PROGUY", "TC6163");
+        again.setUpdatedBy("AIS Message Type 24");
+        assertThat(cache.isUnchanged(again), is(true));
+    }
+
+    @Test
+    public void changedAssetTest() {
+        AssetDigestCache cache = new AssetDigestCache();
+        cache.record(asset("271041815", "PROGUY", "TC6163"));
+
+        assertThat(cache.isUnchanged(asset("271041815", "PROGUY", "TC6164")), is(false));
+        assertThat(cache.isUnchanged(asset("271041815", "PROGUY", null)), is(false));
+        assertThat(cache.isUnchanged(asset("271041815", "PROGUYT", "C6163")), is(false));
+        assertThat(cache.isUnchanged(asset("271041816", "PROGUY", "TC6163")), is(false));
+    }
+
+    @Test
+    public void growTest() {
+        AssetDigestCache cache = new AssetDigestCache();
+        for (int mmsi = 100000000; mmsi < 100010000; mmsi++) {
+            cache.record(asset(Integer.toString(mmsi), "NAME" + mmsi, null));
+        }
+        assertThat(cache.size(), is(10000));
+        cache.record(asset("100000000", "NAME100000000", null));
+        assertThat(cache.size(), is(10000));
+        for (int mmsi = 100000000; mmsi < 100010000; mmsi++) {
+            assertThat(cache.isUnchanged(asset(Integer.toString(mmsi), "NAME" + mmsi, null)), is(true));
+        }
+    }
+
+    @Test
+    public void invalidMmsiTest() {
+        AssetDigestCache cache = new AssetDigestCache();
+        AssetDTO asset = asset("ABC", "PROGUY", "TC6163");
+        cache.record(asset);
+        assertThat(cache.size(), is(0));
+        assertThat(cache.isUnchanged(asset), is(false));
+    }
+
+    private AssetDTO asset(String mmsi, String name, String ircs) {
+        AssetDTO asset = new AssetDTO();
+        asset.setMmsi(mmsi);
+        asset.setName(name);
+        asset.setIrcs(ircs);
+        asset.setUpdatedBy("AIS Message Type 5");
+        return asset;
+    }
+}
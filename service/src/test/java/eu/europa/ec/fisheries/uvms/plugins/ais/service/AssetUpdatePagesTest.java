@@ -0,0 +1,84 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import org.junit.Test;
+import eu.europa.ec.fisheries.uvms.asset.client.model.AssetDTO;
+
+public class AssetUpdatePagesTest {
+
+    private final Jsonb jsonb = JsonbBuilder.create();
+
+    @Test
+    public void sameJsonAsJsonbTest() {
+        List<AssetDTO> assets = assets(7);
+        AssetUpdatePages pages = new AssetUpdatePages(jsonb, assets.iterator(), 1000, 1000000);
+        assertThat(pages.next(), is(jsonb.toJson(assets)));
+        assertThat(pages.getPageSize(), is(7));
+        assertThat(pages.hasNext(), is(false));
+    }
+
+    @Test
+    public void splitByCountTest() {
+        List<AssetDTO> assets = assets(7);
+        assertThat(pageSizes(new AssetUpdatePages(jsonb, assets.iterator(), 3, 1000000), assets, 1000000), is(sizes(3, 3, 1)));
+    }
+
+    @Test
+    public void splitByBytesTest() {
+        List<AssetDTO> assets = assets(7);
+        // room for two assets, but not for three
+        int maxBytes = utf8Length(jsonb.toJson(assets.subList(0, 2))) + 5;
+        assertThat(pageSizes(new AssetUpdatePages(jsonb, assets.iterator(), 1000, maxBytes), assets, maxBytes), is(sizes(2, 2, 2, 1)));
+    }
+
+    @Test
+    public void oversizeAssetTest() {
+        List<AssetDTO> assets = assets(3);
+        assertThat(pageSizes(new AssetUpdatePages(jsonb, assets.iterator(), 1000, 1), assets, 1), is(sizes(1, 1, 1)));
+    }
+
+    // checks every page against json-b for the same assets and the byte limit for pages holding more than one asset
+    private List<Integer> pageSizes(AssetUpdatePages pages, List<AssetDTO> assets, int maxBytes) {
+        List<Integer> sizes = new ArrayList<>();
+        int from = 0;
+        while (pages.hasNext()) {
+            String page = pages.next();
+            int size = pages.getPageSize();
+            assertThat(page, is(jsonb.toJson(assets.subList(from, from + size))));
+            assertTrue(size == 1 || utf8Length(page) <= maxBytes);
+            sizes.add(size);
+            from += size;
+        }
+        assertThat(from, is(assets.size()));
+        return sizes;
+    }
+
+    private static List<Integer> sizes(Integer... sizes) {
+        return Arrays.asList(sizes);
+    }
+
+    private static int utf8Length(String json) {
+        return json.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static List<AssetDTO> assets(int count) {
+        List<AssetDTO> assets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AssetDTO asset = new AssetDTO();
+            asset.setMmsi(String.valueOf(271041810 + i));
+            asset.setName("PROGUY");
+            asset.setIrcs("TC6163");
+            asset.setUpdatedBy("AIS Message Type 5");
+            assets.add(asset);
+        }
+        return assets;
+    }
+}
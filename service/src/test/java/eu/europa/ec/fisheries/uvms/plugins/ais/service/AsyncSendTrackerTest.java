@@ -0,0 +1,87 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.jms.CompletionListener;
+import javax.jms.JMSException;
+import org.junit.Test;
+import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementBaseType;
+
+public class AsyncSendTrackerTest {
+
+    private final List<MovementBaseType> sent = new ArrayList<>();
+    private final List<MovementBaseType> failed = new ArrayList<>();
+
+    @Test
+    public void completionsAreReportedOnceTest() throws InterruptedException {
+        AsyncSendTracker tracker = new AsyncSendTracker(10, sent::add, failed::add);
+        MovementBaseType first = new MovementBaseType();
+        MovementBaseType second = new MovementBaseType();
+        MovementBaseType third = new MovementBaseType();
+        CompletionListener firstListener = tracker.track(first);
+        CompletionListener secondListener = tracker.track(second);
+        tracker.track(third);
+        assertThat(tracker.getOutstanding(), is(3));
+
+        firstListener.onCompletion(null);
+        firstListener.onCompletion(null);
+        secondListener.onException(null, new JMSException("failed"));
+        tracker.failed(third);
+
+        assertThat(sent.size(), is(1));
+        assertThat(failed.size(), is(2));
+        assertThat(tracker.awaitAll(0), is(true));
+    }
+
+    @Test
+    public void unconfirmedSendsAreReturnedTest() throws InterruptedException {
+        AsyncSendTracker tracker = new AsyncSendTracker(10, sent::add, failed::add);
+        MovementBaseType movement = new MovementBaseType();
+        CompletionListener listener = tracker.track(movement);
+
+        assertThat(tracker.awaitAll(10), is(false));
+        List<MovementBaseType> unconfirmed = tracker.abandon();
+        assertThat(unconfirmed.size(), is(1));
+
+        listener.onCompletion(null);
+        assertThat(sent.isEmpty(), is(true));
+    }
+
+    @Test
+    public void lateCompletionBeforeAbandonIsReportedTest() throws InterruptedException {
+        AsyncSendTracker tracker = new AsyncSendTracker(10, sent::add, failed::add);
+        CompletionListener listener = tracker.track(new MovementBaseType());
+
+        assertThat(tracker.awaitAll(10), is(false));
+        // closing the session completes the send
+        listener.onCompletion(null);
+
+        assertThat(tracker.abandon().isEmpty(), is(true));
+        assertThat(sent.size(), is(1));
+    }
+
+    @Test
+    public void windowIsBoundedTest() throws InterruptedException {
+        AsyncSendTracker tracker = new AsyncSendTracker(1, sent::add, failed::add);
+        CompletionListener listener = tracker.track(new MovementBaseType());
+        CountDownLatch tracked = new CountDownLatch(1);
+        Thread sender = new Thread(() -> {
+            try {
+                tracker.track(new MovementBaseType());
+                tracked.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        sender.start();
+
+        assertThat(tracked.await(100, TimeUnit.MILLISECONDS), is(false));
+        listener.onCompletion(null);
+        assertThat(tracked.await(5, TimeUnit.SECONDS), is(true));
+        sender.join();
+    }
+}
@@ -0,0 +1,73 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+
+public class BoundedBatchExecutorTest {
+
+    private final List<List<String>> started = new ArrayList<>();
+    private final List<CompletableFuture<Void>> running = new ArrayList<>();
+
+    private final BoundedBatchExecutor executor = new BoundedBatchExecutor(sentences -> {
+        started.add(sentences);
+        CompletableFuture<Void> batch = new CompletableFuture<>();
+        running.add(batch);
+        return batch;
+    }, 1, 3);
+
+    @Test
+    public void batchesAreMergedWhileInFlightTest() {
+        executor.submit(Arrays.asList("1"));
+        executor.submit(Arrays.asList("2"));
+        executor.submit(Arrays.asList("3"));
+        assertThat(started.size(), is(1));
+        assertThat(executor.getInFlight(), is(1));
+        assertThat(executor.getPending(), is(2));
+        assertThat(executor.getMerged(), is(2L));
+
+        running.get(0).complete(null);
+        assertThat(started.size(), is(2));
+        assertThat(started.get(1), is(Arrays.asList("2", "3")));
+        assertThat(executor.getPending(), is(0));
+
+        running.get(1).complete(null);
+        assertThat(executor.getInFlight(), is(0));
+    }
+
+    @Test
+    public void oldestPendingSentencesAreDroppedTest() {
+        executor.submit(Arrays.asList("1"));
+        executor.submit(Arrays.asList("2", "3"));
+        executor.submit(Arrays.asList("4", "5"));
+        assertThat(executor.getPending(), is(3));
+        assertThat(executor.getDropped(), is(1L));
+
+        running.get(0).completeExceptionally(new IllegalStateException());
+        assertThat(started.get(1), is(Arrays.asList("3", "4", "5")));
+    }
+
+    @Test
+    public void rejectedPendingBatchIsCountedAsDroppedTest() {
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        BoundedBatchExecutor rejecting = new BoundedBatchExecutor(sentences -> {
+            if (!batches.isEmpty()) {
+                throw new IllegalStateException("shutting down");
+            }
+            CompletableFuture<Void> batch = new CompletableFuture<>();
+            batches.add(batch);
+            return batch;
+        }, 1, 10);
+        rejecting.submit(Arrays.asList("1"));
+        rejecting.submit(Arrays.asList("2", "3"));
+
+        batches.get(0).complete(null);
+        assertThat(rejecting.getInFlight(), is(0));
+        assertThat(rejecting.getPending(), is(0));
+        assertThat(rejecting.getDropped(), is(2L));
+    }
+}
@@ -0,0 +1,71 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    private long now = 1000;
+    private final CircuitBreaker breaker = new CircuitBreaker("test", 3, 100, () -> now);
+
+    @Test
+    public void opensAfterConsecutiveFailuresTest() {
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertThat(breaker.getState(), is(CircuitBreaker.State.CLOSED));
+        breaker.onFailure();
+        assertThat(breaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(breaker.allowRequest(), is(false));
+        assertThat(breaker.getOpened(), is(1L));
+        assertThat(breaker.getRejected(), is(1L));
+    }
+
+    @Test
+    public void halfOpenProbeClosesTest() {
+        trip();
+        now += 100;
+        assertThat(breaker.allowRequest(), is(true));
+        assertThat(breaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        // only one probe at a time
+        assertThat(breaker.allowRequest(), is(false));
+        breaker.onSuccess();
+        assertThat(breaker.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(breaker.allowRequest(), is(true));
+        assertThat(breaker.getHalfOpened(), is(1L));
+        assertThat(breaker.getClosed(), is(1L));
+    }
+
+    @Test
+    public void failedProbeOpensAgainTest() {
+        trip();
+        now += 100;
+        assertThat(breaker.allowRequest(), is(true));
+        breaker.onFailure();
+        assertThat(breaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(breaker.getOpened(), is(2L));
+        now += 99;
+        assertThat(breaker.allowRequest(), is(false));
+        now += 1;
+        assertThat(breaker.allowRequest(), is(true));
+    }
+
+    @Test
+    public void lostProbeIsReplacedTest() {
+        trip();
+        now += 100;
+        assertThat(breaker.allowRequest(), is(true));
+        now += 100;
+        assertThat(breaker.allowRequest(), is(true));
+        assertThat(breaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+    }
+
+    private void trip() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class DoubleBufferedMapTest {
+
+    @Test
+    public void swapTest() {
+        DoubleBufferedMap<Integer> map = new DoubleBufferedMap<>();
+        map.put("1", 1);
+        Map<String, Integer> retired = map.swap();
+        map.put("2", 2);
+        assertThat(retired.size(), is(1));
+        assertThat(retired.get("1"), is(1));
+        assertThat(map.size(), is(1));
+    }
+
+    @Test
+    public void noWriteIsLostTest() throws Exception {
+        DoubleBufferedMap<Integer> map = new DoubleBufferedMap<>();
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        for (int w = 0; w < 4; w++) {
+            int writer = w;
+            writers.submit(() -> {
+                for (int i = 0; i < 50000; i++) {
+                    map.put(writer + "-" + i, i);
+                }
+            });
+        }
+        int drained = 0;
+        writers.shutdown();
+        while (!writers.isTerminated()) {
+            drained += map.swap().size();
+        }
+        writers.awaitTermination(10, TimeUnit.SECONDS);
+        drained += map.swap().size();
+        assertThat(drained, is(200000));
+    }
+}
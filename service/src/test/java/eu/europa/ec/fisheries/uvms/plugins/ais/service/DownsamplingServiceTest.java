@@ -2,7 +2,17 @@ package eu.europa.ec.fisheries.uvms.plugins.ais.service;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.enterprise.concurrent.ManagedExecutorService;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -36,7 +46,7 @@ public class DownsamplingServiceTest {
         assertThat(downsamplingService.getDownSampledMovements().size(), is(0));
         MovementBaseType movementBaseType = new MovementBaseType();
         movementBaseType.setMmsi("123456789");
-        downsamplingService.getDownSampledMovements().put(movementBaseType.getMmsi(), movementBaseType);
+        downsamplingService.addDownSampledMovements(Collections.singletonMap(movementBaseType.getMmsi(), movementBaseType));
         assertThat(downsamplingService.getDownSampledMovements().size(), is(1));
         
         downsamplingService.sendDownSampledMovements();
@@ -47,10 +57,82 @@ public class DownsamplingServiceTest {
     public void sendAssetUpdatesTest() {
         when(startUp.isEnabled()).thenReturn(true);
         assertThat(downsamplingService.getStoredAssetInfo().size(), is(0));
-        downsamplingService.getStoredAssetInfo().put("123456", new AssetDTO());
+        AssetDTO asset = new AssetDTO();
+        asset.setMmsi("123456");
+        downsamplingService.addStoredAssetInfo(Collections.singletonMap(asset.getMmsi(), asset));
         assertThat(downsamplingService.getStoredAssetInfo().size(), is(1));
         
         downsamplingService.sendAssetUpdates();
         assertThat(downsamplingService.getStoredAssetInfo().size(), is(0));
     }
+
+    @Test
+    public void staticReportsAreMergedTest() {
+        AssetDTO partA = new AssetDTO();
+        partA.setMmsi("271041815");
+        partA.setName("PROGUY");
+        AssetDTO partB = new AssetDTO();
+        partB.setMmsi("271041815");
+        partB.setIrcs("TC6163");
+        partB.setVesselType("Passenger");
+        downsamplingService.addStoredAssetInfo(Collections.singletonMap(partA.getMmsi(), partA));
+        downsamplingService.addStoredAssetInfo(Collections.singletonMap(partB.getMmsi(), partB));
+
+        assertThat(downsamplingService.getStoredAssetInfo().size(), is(1));
+        AssetDTO asset = downsamplingService.getStoredAssetInfo().get("271041815");
+        assertThat(asset.getName(), is("PROGUY"));
+        assertThat(asset.getIrcs(), is("TC6163"));
+        assertThat(asset.getVesselType(), is("Passenger"));
+    }
+
+    @Test
+    public void unchangedAssetUpdatesSuppressedTest() {
+        when(startUp.isEnabled()).thenReturn(true);
+        when(exchangeService.sendAssetUpdates(any())).thenReturn(true);
+        AssetDTO asset = new AssetDTO();
+        asset.setMmsi("271041815");
+        asset.setName("PROGUY");
+
+        downsamplingService.addStoredAssetInfo(Collections.singletonMap(asset.getMmsi(), asset));
+        downsamplingService.sendAssetUpdates();
+        downsamplingService.addStoredAssetInfo(Collections.singletonMap(asset.getMmsi(), asset));
+        downsamplingService.sendAssetUpdates();
+
+        verify(exchangeService, times(1)).sendAssetUpdates(any());
+        assertThat(downsamplingService.getSuppressedAssetUpdates(), is(1L));
+    }
+
+    @Test
+    public void noMovementIsLostWhileSwappingTest() throws Exception {
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(executorService).execute(any());
+        AtomicInteger sent = new AtomicInteger();
+        when(exchangeService.sendToExchange(any(), any())).thenAnswer(invocation -> {
+            sent.addAndGet(((Collection<?>) invocation.getArgument(0)).size());
+            return 0;
+        });
+
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        for (int w = 0; w < 4; w++) {
+            int writer = w;
+            writers.submit(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    MovementBaseType movement = new MovementBaseType();
+                    movement.setMmsi(String.valueOf(writer * 100000000 + i));
+                    downsamplingService.addDownSampledMovements(Collections.singletonMap(movement.getMmsi(), movement));
+                }
+            });
+        }
+        writers.shutdown();
+        while (!writers.isTerminated()) {
+            downsamplingService.sendDownSampledMovements();
+        }
+        writers.awaitTermination(10, TimeUnit.SECONDS);
+        downsamplingService.sendDownSampledMovements();
+
+        assertThat(sent.get(), is(80000));
+        assertThat(downsamplingService.getDownSampledMovements().size(), is(0));
+    }
 }
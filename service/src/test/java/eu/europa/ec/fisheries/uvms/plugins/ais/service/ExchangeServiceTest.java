@@ -0,0 +1,166 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.ArrayList;
+import java.util.List;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import org.eclipse.microprofile.metrics.Counter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementBaseType;
+import eu.europa.ec.fisheries.uvms.plugins.ais.StartupBean;
+import eu.europa.ec.fisheries.uvms.plugins.ais.service.JmsSessionPool.PooledSession;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class ExchangeServiceTest {
+
+    @Mock
+    private StartupBean startUp;
+
+    @Mock
+    private JmsSessionPool sessionPool;
+
+    @Mock
+    private AisService aisService;
+
+    @Mock
+    private Counter aisIncoming;
+
+    @Mock
+    private PooledSession pooled;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private MessageProducer producer;
+
+    @Mock
+    private TextMessage message;
+
+    @InjectMocks
+    private ExchangeService exchangeService;
+
+    private CircuitBreaker breaker = new CircuitBreaker("exchange", 2, 60000);
+
+    @Before
+    public void setup() throws JMSException {
+        when(sessionPool.borrow()).thenReturn(pooled);
+        when(sessionPool.borrowTransacted()).thenReturn(pooled);
+        when(pooled.getSession()).thenReturn(session);
+        when(pooled.getExchangeProducer()).thenReturn(producer);
+        when(session.createTextMessage()).thenReturn(message);
+        when(sessionPool.getExchangeBreaker()).thenReturn(breaker);
+        when(sessionPool.getErrorBreaker()).thenReturn(new CircuitBreaker("error queue", 2, 60000));
+    }
+
+    @Test
+    public void openBreakerSpoolsWithoutSendingTest() throws JMSException {
+        doThrow(new JMSException("broker down")).when(producer).send(any());
+
+        assertThat(exchangeService.sendToExchange(getMovements(5), "AIS"), is(5));
+        verify(producer, times(2)).send(any());
+        verify(aisService, times(5)).addCachedMovement(any());
+        assertThat(breaker.isOpen(), is(true));
+
+        assertThat(exchangeService.sendToExchange(getMovements(3), "AIS"), is(3));
+        verify(sessionPool, times(1)).borrow();
+        verify(aisService, times(8)).addCachedMovement(any());
+    }
+
+    @Test
+    public void halfOpenResendSendsOneProbeTest() throws JMSException {
+        CircuitBreaker probed = new CircuitBreaker("exchange", 1, 0);
+        when(sessionPool.getExchangeBreaker()).thenReturn(probed);
+        probed.onFailure();
+        assertThat(probed.allowRequest(), is(true));
+        doThrow(new JMSException("still down")).when(producer).send(any());
+
+        assertThat(exchangeService.resendToExchange(getMovements(5), "AIS"), is(0));
+        verify(producer, times(1)).send(any());
+        verify(aisService, never()).addCachedMovement(any());
+        assertThat(probed.isOpen(), is(true));
+
+        assertThat(probed.allowRequest(), is(true));
+        doNothing().when(producer).send(any());
+        assertThat(exchangeService.resendToExchange(getMovements(5), "AIS"), is(5));
+        verify(producer, times(6)).send(any());
+        assertThat(probed.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void liveTrafficDoesNotProbeWithResendSpoolTest() throws JMSException {
+        CircuitBreaker probed = new CircuitBreaker("exchange", 1, 0);
+        when(sessionPool.getExchangeBreaker()).thenReturn(probed);
+        when(aisService.hasResendSpool()).thenReturn(true);
+        probed.onFailure();
+
+        assertThat(exchangeService.sendToExchange(getMovements(3), "AIS"), is(3));
+        verify(sessionPool, never()).borrow();
+        verify(aisService, times(3)).addCachedMovement(any());
+        assertThat(probed.isOpen(), is(true));
+    }
+
+    @Test
+    public void transactedPublishingCommitsPerBatchTest() throws JMSException {
+        when(startUp.getSetting("PUBLISH_MODE")).thenReturn("transacted");
+        when(startUp.getSetting("PUBLISH_COMMIT_SIZE")).thenReturn("2");
+
+        exchangeService.sendToExchange(getMovements(3), "AIS");
+
+        verify(producer, times(3)).send(message);
+        verify(session, times(2)).commit();
+        verify(aisIncoming).inc(2);
+        verify(aisIncoming).inc(1);
+        verify(aisService, never()).addCachedMovement(any());
+    }
+
+    @Test
+    public void rolledBackBatchIsRetriedTest() throws JMSException {
+        when(startUp.getSetting("PUBLISH_MODE")).thenReturn("transacted");
+        doThrow(new JMSException("rolled back")).doNothing().when(session).commit();
+
+        exchangeService.sendToExchange(getMovements(2), "AIS");
+
+        verify(session).rollback();
+        verify(pooled).invalidate();
+        verify(producer, times(4)).send(message);
+        verify(aisService, never()).addCachedMovement(any());
+    }
+
+    @Test
+    public void failedBatchGoesToResendTest() throws JMSException {
+        when(startUp.getSetting("PUBLISH_MODE")).thenReturn("transacted");
+        doThrow(new JMSException("rolled back")).when(session).commit();
+
+        exchangeService.sendToExchange(getMovements(2), "AIS");
+
+        verify(session, times(2)).rollback();
+        verify(aisService, times(2)).addCachedMovement(any());
+    }
+
+    private List<MovementBaseType> getMovements(int count) {
+        List<MovementBaseType> movements = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MovementBaseType movement = new MovementBaseType();
+            movement.setMmsi(String.valueOf(123456780 + i));
+            movements.add(movement);
+        }
+        return movements;
+    }
+}
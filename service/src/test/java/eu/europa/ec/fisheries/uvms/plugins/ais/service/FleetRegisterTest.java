@@ -0,0 +1,64 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FleetRegisterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void csvTest() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("fleet.csv");
+        Files.write(file, Arrays.asList(
+                "Country Code;CFR;Name;MMSI;IRCS",
+                "DNK;DNK000012345;NORDSTJERNEN;\"219024194\";OXAB",
+                "SWE;SWE000000001;UTAN MMSI;;SABC",
+                "SWE;SWE000000002;ANNA;265547250;SDEF"));
+        FleetRegister register = FleetRegister.read(file);
+        assertThat(register.size(), is(2));
+        assertThat(register.contains(219024194), is(true));
+        assertThat(register.contains(265547250), is(true));
+        assertThat(register.contains(261061000), is(false));
+    }
+
+    @Test
+    public void csvWithoutHeaderTest() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("mmsi.csv");
+        Files.write(file, Arrays.asList("219024194", "265547250"));
+        assertThat(FleetRegister.read(file).size(), is(2));
+    }
+
+    @Test
+    public void jsonTest() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("assets.json");
+        Files.write(file, Arrays.asList("[{\"name\":\"NORDSTJERNEN\",\"mmsi\":\"219024194\"},{\"name\":\"ANNA\",\"mmsi\":265547250},{\"name\":\"NO MMSI\",\"mmsi\":null}]"));
+        FleetRegister register = FleetRegister.read(file);
+        assertThat(register.size(), is(2));
+        assertThat(register.contains(219024194), is(true));
+        assertThat(register.contains(265547250), is(true));
+    }
+
+    @Test
+    public void bloomFilterTest() {
+        MmsiBloomFilter filter = new MmsiBloomFilter(10000);
+        for (int mmsi = 200000000; mmsi < 200010000; mmsi++) {
+            filter.add(mmsi);
+        }
+        int falsePositives = 0;
+        for (int mmsi = 200000000; mmsi < 200010000; mmsi++) {
+            assertThat(filter.mightContain(mmsi), is(true));
+            if (filter.mightContain(mmsi + 100000)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives < 500, is(true));
+    }
+}
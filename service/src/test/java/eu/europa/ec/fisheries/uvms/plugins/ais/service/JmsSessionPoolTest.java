@@ -0,0 +1,87 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Session;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import eu.europa.ec.fisheries.uvms.plugins.ais.StartupBean;
+import eu.europa.ec.fisheries.uvms.plugins.ais.service.JmsSessionPool.PooledSession;
+
+@RunWith(MockitoJUnitRunner.class)
+public class JmsSessionPoolTest {
+
+    @Mock
+    private ConnectionFactory connectionFactory;
+
+    @Mock
+    private StartupBean startUp;
+
+    @InjectMocks
+    private JmsSessionPool sessionPool;
+
+    @Test
+    public void sessionIsReusedTest() throws JMSException {
+        Connection connection = mock(Connection.class);
+        when(connectionFactory.createConnection()).thenReturn(connection);
+        when(connection.createSession(anyBoolean(), anyInt())).thenAnswer(invocation -> mock(Session.class));
+
+        Session first;
+        try (PooledSession pooled = sessionPool.borrow()) {
+            first = pooled.getSession();
+        }
+        assertThat(sessionPool.getIdleSessions(), is(1));
+        try (PooledSession pooled = sessionPool.borrow()) {
+            assertThat(pooled.getSession(), is(sameInstance(first)));
+        }
+        verify(connectionFactory, times(1)).createConnection();
+        verify(connection, times(1)).createSession(anyBoolean(), anyInt());
+    }
+
+    @Test
+    public void invalidatedSessionIsClosedTest() throws JMSException {
+        Connection connection = mock(Connection.class);
+        when(connectionFactory.createConnection()).thenReturn(connection);
+        when(connection.createSession(anyBoolean(), anyInt())).thenAnswer(invocation -> mock(Session.class));
+
+        Session first;
+        try (PooledSession pooled = sessionPool.borrow()) {
+            first = pooled.getSession();
+            pooled.invalidate();
+        }
+        verify(first).close();
+        assertThat(sessionPool.getIdleSessions(), is(0));
+        try (PooledSession pooled = sessionPool.borrow()) {
+            assertThat(pooled.getSession(), is(not(sameInstance(first))));
+        }
+    }
+
+    @Test
+    public void reconnectTest() throws JMSException {
+        Connection broken = mock(Connection.class);
+        Connection connection = mock(Connection.class);
+        when(connectionFactory.createConnection()).thenReturn(broken, connection);
+        when(broken.createSession(anyBoolean(), anyInt())).thenThrow(new JMSException("connection failed"));
+        when(connection.createSession(anyBoolean(), anyInt())).thenAnswer(invocation -> mock(Session.class));
+
+        try (PooledSession pooled = sessionPool.borrow()) {
+            assertThat(pooled.getSession() != null, is(true));
+        }
+        verify(broken).close();
+        assertThat(sessionPool.getReconnects(), is(1L));
+    }
+}
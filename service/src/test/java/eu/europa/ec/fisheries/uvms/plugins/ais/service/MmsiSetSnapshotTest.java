@@ -0,0 +1,63 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MmsiSetSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeAndReadTest() throws Exception {
+        MmsiSet set = new MmsiSet();
+        set.add(261061000);
+        set.add(219024194);
+        Path file = folder.getRoot().toPath().resolve("snapshot.bin");
+        MmsiSetSnapshot.write(set, file);
+
+        MmsiSet loaded = new MmsiSet();
+        assertThat(MmsiSetSnapshot.read(file, loaded), is(2));
+        assertThat(loaded.contains(261061000), is(true));
+        assertThat(loaded.contains(219024194), is(true));
+    }
+
+    @Test
+    public void missingFileTest() throws Exception {
+        assertThat(MmsiSetSnapshot.read(folder.getRoot().toPath().resolve("missing.bin"), new MmsiSet()), is(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptFileTest() throws Exception {
+        Path file = folder.newFile("corrupt.bin").toPath();
+        Files.write(file, "not a snapshot".getBytes());
+        MmsiSetSnapshot.read(file, new MmsiSet());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFileTest() throws Exception {
+        MmsiSet set = new MmsiSet();
+        set.add(261061000);
+        set.add(219024194);
+        Path file = folder.getRoot().toPath().resolve("truncated.bin");
+        MmsiSetSnapshot.write(set, file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - Integer.BYTES));
+        MmsiSetSnapshot.read(file, new MmsiSet());
+    }
+
+    @Test
+    public void emptySetTest() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("empty.bin");
+        MmsiSetSnapshot.write(new MmsiSet(), file);
+        assertThat(Files.size(file), is(12L));
+        assertThat(MmsiSetSnapshot.read(file, new MmsiSet()), is(0));
+    }
+}
@@ -0,0 +1,39 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class MmsiSetTest {
+
+    @Test
+    public void addContainsRemoveTest() {
+        MmsiSet set = new MmsiSet();
+        assertThat(set.add(261061000), is(true));
+        assertThat(set.add(261061000), is(false));
+        assertThat(set.contains(261061000), is(true));
+        assertThat(set.contains(219024194), is(false));
+        assertThat(set.size(), is(1));
+
+        assertThat(set.remove(261061000), is(true));
+        assertThat(set.contains(261061000), is(false));
+        assertThat(set.size(), is(0));
+        assertThat(set.getModificationCount(), is(2L));
+    }
+
+    @Test
+    public void growTest() {
+        MmsiSet set = new MmsiSet();
+        for (int mmsi = 200000000; mmsi < 200010000; mmsi++) {
+            set.add(mmsi);
+        }
+        for (int mmsi = 200000000; mmsi < 200005000; mmsi++) {
+            set.remove(mmsi);
+        }
+        assertThat(set.size(), is(5000));
+        assertThat(set.toArray().length, is(5000));
+        assertThat(set.contains(200004999), is(false));
+        assertThat(set.contains(200005000), is(true));
+        assertThat(set.contains(200009999), is(true));
+    }
+}
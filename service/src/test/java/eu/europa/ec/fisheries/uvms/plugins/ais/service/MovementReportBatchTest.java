@@ -0,0 +1,53 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+public class MovementReportBatchTest {
+
+    private static final String REPORT = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<ns2:SetMovementReportRequest xmlns:ns2=\"urn:module.exchange.schema.fisheries.ec.europa.eu:v1\">"
+            + "<method>SET_MOVEMENT_REPORT</method></ns2:SetMovementReportRequest>";
+
+    @Test
+    public void envelopeTest() throws Exception {
+        MovementReportBatch batch = new MovementReportBatch();
+        batch.add(REPORT);
+        batch.add(REPORT);
+        assertThat(batch.size(), is(2));
+
+        Element root = parse(batch.toXml()).getDocumentElement();
+        assertThat(root.getNamespaceURI(), is(MovementReportBatch.NAMESPACE));
+        assertThat(root.getAttribute("size"), is("2"));
+        NodeList reports = root.getElementsByTagNameNS("urn:module.exchange.schema.fisheries.ec.europa.eu:v1", "SetMovementReportRequest");
+        assertThat(reports.getLength(), is(2));
+        // unqualified children of a report must not pick up a namespace from the envelope
+        NodeList methods = root.getElementsByTagNameNS("", "method");
+        assertThat(methods.getLength(), is(2));
+    }
+
+    @Test
+    public void clearTest() throws Exception {
+        MovementReportBatch batch = new MovementReportBatch();
+        batch.add(REPORT);
+        batch.clear();
+        batch.add(REPORT);
+
+        Element root = parse(batch.toXml()).getDocumentElement();
+        assertThat(root.getAttribute("size"), is("1"));
+        assertThat(root.getChildNodes().getLength(), is(1));
+    }
+
+    private Document parse(String xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,49 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import java.time.Instant;
+import java.util.Date;
+import org.junit.Test;
+import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementBaseType;
+import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementPoint;
+import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementSourceType;
+import eu.europa.ec.fisheries.schema.exchange.movement.v1.SetReportMovementType;
+import eu.europa.ec.fisheries.schema.exchange.plugin.types.v1.PluginType;
+import eu.europa.ec.fisheries.uvms.exchange.model.mapper.ExchangeModuleRequestMapper;
+
+public class MovementReportMarshallerTest {
+
+    @Test
+    public void sameDocumentAsMapperTest() {
+        MovementReportMarshaller marshaller = new MovementReportMarshaller();
+        Instant date = Instant.parse("2019-05-14T10:15:30Z");
+
+        for (int i = 0; i < 3; i++) {
+            SetReportMovementType report = getReport("21902419" + i, date.plusSeconds(i));
+            String expected = ExchangeModuleRequestMapper.createSetMovementReportRequest(report, "AIS", null, date, PluginType.OTHER, "AIS", null);
+
+            assertThat(marshaller.marshal(report, "AIS", date, PluginType.OTHER, "AIS"), is(expected));
+            assertThat(marshaller.isCached(), is(true));
+        }
+    }
+
+    private SetReportMovementType getReport(String mmsi, Instant positionTime) {
+        MovementPoint point = new MovementPoint();
+        point.setLatitude(57.7);
+        point.setLongitude(11.9);
+        MovementBaseType movement = new MovementBaseType();
+        movement.setMmsi(mmsi);
+        movement.setPosition(point);
+        movement.setReportedSpeed(10.5);
+        movement.setReportedCourse(180.0);
+        movement.setPositionTime(Date.from(positionTime));
+        movement.setSource(MovementSourceType.AIS);
+        SetReportMovementType report = new SetReportMovementType();
+        report.setTimestamp(Date.from(positionTime));
+        report.setPluginName("eu.europa.ec.fisheries.uvms.plugins.ais");
+        report.setPluginType(PluginType.OTHER);
+        report.setMovement(movement);
+        return report;
+    }
+}
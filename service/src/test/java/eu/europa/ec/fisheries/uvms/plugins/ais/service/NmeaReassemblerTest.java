@@ -0,0 +1,94 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import eu.europa.ec.fisheries.uvms.plugins.ais.mapper.AisBitBuffer;
+import eu.europa.ec.fisheries.uvms.plugins.ais.mapper.AisParser;
+
+/*
+ * Test data taken from https://fossies.org/linux/gpsd/test/sample.aivdm
+ */
+public class NmeaReassemblerTest {
+
+    private static final String TYPE5_PART1_A = "!AIVDM,2,1,1,A,55?MbV02;H;s<HtKR20EHE:0@T4@Dn2222222216L961O5Gf0NSQEp6ClRp8,0*1C";
+    private static final String TYPE5_PART2_A = "!AIVDM,2,2,1,A,88888888880,2*25";
+    private static final String TYPE5_PART1_B = "!AIVDM,2,1,1,B,55?MbV02;H;s<HtKR20EHE:0@T4@Dn2222222216L961O5Gf0NSQEp6ClRp8,0*1F";
+    private static final String TYPE5_PART2_B = "!AIVDM,2,2,1,B,88888888880,2*26";
+    private static final String TYPE5_PAYLOAD = "55?MbV02;H;s<HtKR20EHE:0@T4@Dn2222222216L961O5Gf0NSQEp6ClRp888888888880,2";
+
+    private long now = 1000;
+    private final NmeaReassembler reassembler = new NmeaReassembler(4, 100, () -> now);
+
+    @Test
+    public void singleFragmentAndPayloadTest() {
+        List<String> payloads = reassembler.reassemble(Arrays.asList("!AIVDM,1,1,,A,15RTgt0PAso;90TKcjM8h6g208CQ,0*4A",
+                "15RTgt0PAso;90TKcjM8h6g208CQ,0*4A"));
+        assertThat(payloads, is(Arrays.asList("15RTgt0PAso;90TKcjM8h6g208CQ,0", "15RTgt0PAso;90TKcjM8h6g208CQ,0*4A")));
+    }
+
+    @Test
+    public void type5SplitAcrossPollsTest() {
+        assertThat(reassembler.reassemble(Collections.singletonList(TYPE5_PART1_A)).isEmpty(), is(true));
+        assertThat(reassembler.getPending(), is(1));
+
+        List<String> payloads = reassembler.reassemble(Collections.singletonList(TYPE5_PART2_A));
+
+        assertThat(payloads, is(Collections.singletonList(TYPE5_PAYLOAD)));
+        assertThat(reassembler.getPending(), is(0));
+        assertThat(AisParser.validate(payloads.get(0)), is(AisParser.Result.OK));
+        assertThat(AisParser.parseStaticReport(AisParser.decode(new AisBitBuffer(payloads.get(0)))).getMmsi(), is("351759000"));
+    }
+
+    @Test
+    public void interleavedChannelsTest() {
+        List<String> payloads = reassembler.reassemble(Arrays.asList(TYPE5_PART1_A, TYPE5_PART1_B, TYPE5_PART2_B, TYPE5_PART2_A));
+        assertThat(payloads, is(Arrays.asList(TYPE5_PAYLOAD, TYPE5_PAYLOAD)));
+    }
+
+    @Test
+    public void sourcesAreKeptApartTest() {
+        List<String> payloads = reassembler.reassemble(Arrays.asList("\\s:station1*00\\" + TYPE5_PART1_A,
+                "\\s:station2*00\\" + TYPE5_PART2_A));
+        assertThat(payloads.isEmpty(), is(true));
+        assertThat(reassembler.getPending(), is(2));
+    }
+
+    @Test
+    public void checksumMismatchTest() {
+        List<String> payloads = reassembler.reassemble(Arrays.asList(TYPE5_PART1_A, TYPE5_PART2_A.replace("*25", "*26")));
+        assertThat(payloads.isEmpty(), is(true));
+        assertThat(reassembler.getChecksumErrors(), is(1L));
+    }
+
+    @Test
+    public void incompleteMessagesAreEvictedTest() {
+        reassembler.reassemble(Collections.singletonList(TYPE5_PART1_A));
+        now += 100;
+
+        assertThat(reassembler.reassemble(Collections.singletonList(TYPE5_PART2_A)).isEmpty(), is(true));
+        assertThat(reassembler.getDropped(), is(1L));
+    }
+
+    @Test
+    public void oldestMessageIsEvictedWhenFullTest() {
+        for (int i = 0; i < 5; i++) {
+            String body = "AIVDM,2,1," + i + ",A,55?MbV02;H;s<HtKR20EHE,0";
+            reassembler.reassemble(Collections.singletonList("!" + body + "*" + checksum(body)));
+            now++;
+        }
+        assertThat(reassembler.getPending(), is(4));
+        assertThat(reassembler.getDropped(), is(1L));
+    }
+
+    private static String checksum(String body) {
+        int checksum = 0;
+        for (char c : body.toCharArray()) {
+            checksum ^= c;
+        }
+        return String.format("%02X", checksum);
+    }
+}
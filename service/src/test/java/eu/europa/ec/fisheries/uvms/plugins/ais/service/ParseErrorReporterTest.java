@@ -0,0 +1,144 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import eu.europa.ec.fisheries.uvms.plugins.ais.StartupBean;
+import eu.europa.ec.fisheries.uvms.plugins.ais.mapper.AisParser;
+import eu.europa.ec.fisheries.uvms.plugins.ais.service.ParseErrorReporter.ParseError;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class ParseErrorReporterTest {
+
+    @Mock
+    private StartupBean startUp;
+
+    @Mock
+    private ExchangeService exchangeService;
+
+    @InjectMocks
+    private ParseErrorReporter reporter;
+
+    private final List<ParseError> sent = new ArrayList<>();
+
+    @Test
+    public void repeatedErrorsAreSentOnceTest() {
+        sendAll();
+        for (int i = 0; i < 5; i++) {
+            reporter.report("15RTgt0PAso;90TKcjM8,0*4A", AisParser.Result.TRUNCATED);
+        }
+        reporter.report("15RTgt0PAso;90TKcjM8,0*4A", new IllegalArgumentException());
+        assertThat(reporter.getPending(), is(2));
+
+        reporter.flush();
+
+        assertThat(sent.size(), is(2));
+        for (ParseError error : sent) {
+            assertThat(error.getOccurrences(), is(error.getReason().equals("TRUNCATED") ? 5L : 1L));
+        }
+        assertThat(reporter.getPending(), is(0));
+        assertThat(reporter.getReported(), is(6L));
+        assertThat(reporter.getRejected(AisParser.Result.TRUNCATED), is(5L));
+        assertThat(reporter.getDecodeFailures(), is(1L));
+    }
+
+    @Test
+    public void rateCapHoldsErrorsBackTest() {
+        sendAll();
+        when(startUp.getSetting("PARSE_ERROR_MAX_PER_MINUTE")).thenReturn("2");
+        for (int i = 0; i < 3; i++) {
+            reporter.report("sentence " + i, AisParser.Result.TRUNCATED);
+        }
+
+        reporter.flush();
+        reporter.flush();
+
+        assertThat(sent.size(), is(2));
+        assertThat(reporter.getPending(), is(1));
+    }
+
+    @Test
+    public void unsentErrorsAreKeptTest() {
+        when(exchangeService.sendParsingErrors(any())).thenReturn(0);
+        reporter.report("15RTgt0PAso;90TKcjM8,0*4A", AisParser.Result.TRUNCATED);
+
+        reporter.flush();
+        reporter.report("15RTgt0PAso;90TKcjM8,0*4A", AisParser.Result.TRUNCATED);
+
+        assertThat(reporter.getPending(), is(1));
+        sendAll();
+        when(startUp.getSetting("PARSE_ERROR_MAX_PER_MINUTE")).thenReturn("10");
+        reporter.flush();
+        assertThat(sent.get(0).getOccurrences(), is(2L));
+    }
+
+    @Test
+    public void noOccurrenceIsLostWhileFlushingTest() throws InterruptedException {
+        AtomicLong occurrences = new AtomicLong();
+        when(exchangeService.sendParsingErrors(any())).thenAnswer(invocation -> {
+            // counted when sent, as the error queue message is
+            List<ParseError> errors = invocation.getArgument(0);
+            for (ParseError error : errors) {
+                occurrences.addAndGet(error.getOccurrences());
+            }
+            return errors.size();
+        });
+        when(startUp.getSetting("PARSE_ERROR_MAX_PER_MINUTE")).thenReturn("1000000");
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    reporter.report("15RTgt0PAso;90TKcjM8,0*4A", AisParser.Result.TRUNCATED);
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        while (writers.stream().anyMatch(Thread::isAlive)) {
+            reporter.flush();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        reporter.flush();
+
+        assertThat(occurrences.get(), is(80000L));
+        assertThat(reporter.getPending(), is(0));
+    }
+
+    @Test
+    public void unsupportedTypeIsOnlyCountedTest() {
+        reporter.report("85RTgt0PAso;90TKcjM8h6g208CQ,0*4A", AisParser.Result.UNSUPPORTED_TYPE);
+        reporter.report(",0*4A", AisParser.Result.EMPTY);
+
+        assertThat(reporter.getRejectedUnsupportedType(), is(1L));
+        assertThat(reporter.getRejectedEmpty(), is(1L));
+        assertThat(reporter.getPending(), is(1));
+        assertThat(reporter.getReported(), is(1L));
+    }
+
+    @Test
+    public void nothingToFlushTest() {
+        reporter.flush();
+        verify(exchangeService, never()).sendParsingErrors(any());
+    }
+
+    private void sendAll() {
+        when(exchangeService.sendParsingErrors(any())).thenAnswer(invocation -> {
+            List<ParseError> errors = invocation.getArgument(0);
+            sent.addAll(errors);
+            return errors.size();
+        });
+    }
+}
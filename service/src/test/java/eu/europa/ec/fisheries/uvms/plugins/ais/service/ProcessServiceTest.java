@@ -4,10 +4,9 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import java.time.ZoneOffset;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
@@ -15,10 +14,12 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementBaseType;
 import eu.europa.ec.fisheries.uvms.asset.client.model.AssetDTO;
 import eu.europa.ec.fisheries.uvms.plugins.ais.StartupBean;
+import eu.europa.ec.fisheries.uvms.plugins.ais.mapper.AisParser;
 
 /*
  * Test data taken from https://fossies.org/linux/gpsd/test/sample.aivdm
@@ -35,6 +36,15 @@ public class ProcessServiceTest {
     @Mock
     private ExchangeService exchangeService;
     
+    @Mock
+    private ParseErrorReporter parseErrorReporter;
+    
+    @Mock
+    private DecodePool decodePool;
+    
+    @Spy
+    private FleetRegisterService fleetRegisterService = new FleetRegisterService();
+    
     @InjectMocks
     private ProcessService processService;
     
@@ -43,7 +53,7 @@ public class ProcessServiceTest {
     
     @Test
     public void aisType1Test() {
-        ProcessResult result = processService.processMessages(Arrays.asList(getAisType1Message()), new HashSet<>());
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType1Message()), new MmsiSet());
         Map<String, MovementBaseType> movements = result.getDownsampledMovements();
         MovementBaseType movement = movements.get("371798000");
         assertThat(movement.getMmsi(), is("371798000"));
@@ -59,7 +69,7 @@ public class ProcessServiceTest {
     
     @Test
     public void aisType2Test() {
-        ProcessResult result = processService.processMessages(Arrays.asList(getAisType2Message()), new HashSet<>());
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType2Message()), new MmsiSet());
         Map<String, MovementBaseType> movements = result.getDownsampledMovements();
         MovementBaseType movement = movements.get("356302000");
         assertThat(movement.getMmsi(), is("356302000"));
@@ -75,7 +85,7 @@ public class ProcessServiceTest {
     
     @Test
     public void aisType3Test() {
-        ProcessResult result = processService.processMessages(Arrays.asList(getAisType3Message()), new HashSet<>());
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType3Message()), new MmsiSet());
         Map<String, MovementBaseType> movements = result.getDownsampledMovements();
         MovementBaseType movement = movements.get("563808000");
         assertThat(movement.getMmsi(), is("563808000"));
@@ -91,7 +101,7 @@ public class ProcessServiceTest {
     
     @Test
     public void positionTest() {
-        ProcessResult result = processService.processMessages(Arrays.asList(getAisPositionMessage()), new HashSet<>());
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisPositionMessage()), new MmsiSet());
         Map<String, MovementBaseType> movements = result.getDownsampledMovements();
         MovementBaseType movement = movements.get("219024194");
         assertThat(movement.getMmsi(), is("219024194"));
@@ -102,7 +112,7 @@ public class ProcessServiceTest {
     
     @Test
     public void positionType18Test() {
-        ProcessResult result = processService.processMessages(Arrays.asList(getAisType18Message()), new HashSet<>());
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType18Message()), new MmsiSet());
         Map<String, MovementBaseType> movements = result.getDownsampledMovements();
         MovementBaseType movement = movements.get("338087471");
         assertThat(movement.getMmsi(), is("338087471"));
@@ -112,9 +122,34 @@ public class ProcessServiceTest {
         assertThat(movement.getAisPositionAccuracy(), is((short)0));
     }
     
+    @Test
+    public void positionType19Test() {
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType19Message()), new MmsiSet());
+        Map<String, MovementBaseType> movements = result.getDownsampledMovements();
+        MovementBaseType movement = movements.get("367059850");
+        assertThat(movement.getMmsi(), is("367059850"));
+        assertThat(movement.getFlagState(), is("USA"));
+        assertThat(movement.getPosition().getLatitude(), is(29.543695));
+        assertThat(movement.getPosition().getLongitude(), is(-88.81039166666666));
+        assertThat(movement.getReportedSpeed(), is(8.7));
+        assertThat(movement.getReportedCourse(), is(335.9));
+    }
+    
+    @Test
+    public void positionType27Test() {
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType27Message()), new MmsiSet());
+        Map<String, MovementBaseType> movements = result.getDownsampledMovements();
+        MovementBaseType movement = movements.get("206914217");
+        assertThat(movement.getMmsi(), is("206914217"));
+        assertThat(movement.getPosition().getLatitude(), is(4.84));
+        assertThat(movement.getPosition().getLongitude(), is(137.02333333333334));
+        assertThat(movement.getReportedSpeed(), is(57.0));
+        assertThat(movement.getReportedCourse(), is(167.0));
+    }
+    
     @Test
     public void aisType5Test() {
-        ProcessResult result = processService.processMessages(Arrays.asList(getAisType5Message()), new HashSet<>());
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType5Message()), new MmsiSet());
         Map<String, AssetDTO> assetMap = result.getDownsampledAssets();
         assertThat(assetMap.size(), is(1));
         AssetDTO asset = assetMap.get("351759000");
@@ -125,19 +160,18 @@ public class ProcessServiceTest {
     
     @Test
     public void fishingVesselTest() {
-        String knownMmsi = "261061000";
-        Set<String> fishingVessels = new HashSet<>();
+        int knownMmsi = 261061000;
+        MmsiSet fishingVessels = new MmsiSet();
         processService.processMessages(Arrays.asList(getAisType5FishingVessel()), fishingVessels);
         assertThat(fishingVessels.size(), is(1));
-        String assetMmsi = fishingVessels.iterator().next();
-        assertThat(assetMmsi, is(knownMmsi));
+        assertThat(fishingVessels.contains(knownMmsi), is(true));
     }
     
     @Test
     public void knownFishingVesselTest() {
         String knownMmsi = "219024194";
-        Set<String> fishingVessels = new HashSet<>();
-        fishingVessels.add(knownMmsi);
+        MmsiSet fishingVessels = new MmsiSet();
+        fishingVessels.add(Integer.parseInt(knownMmsi));
         processService.processMessages(Arrays.asList(getAisPositionMessage()), fishingVessels);
         Mockito.verify(exchangeService).sendToExchange(captor.capture(), Mockito.any());
         List<MovementBaseType> movements = captor.getValue();
@@ -147,16 +181,130 @@ public class ProcessServiceTest {
     
     @Test
     public void notKnownFishingVesselTest() {
-        Set<String> fishingVessels = new HashSet<>();
+        MmsiSet fishingVessels = new MmsiSet();
         processService.processMessages(Arrays.asList(getAisPositionMessage()), fishingVessels);
         Mockito.verify(exchangeService).sendToExchange(captor.capture(), Mockito.any());
         List<MovementBaseType> movements = captor.getValue();
         assertThat(movements.size(), is(0));
     }
     
+    @Test
+    public void fleetRegisterVesselTest() {
+        MmsiSet registered = new MmsiSet();
+        registered.add(219024194);
+        Mockito.doReturn(new FleetRegister(registered)).when(fleetRegisterService).getRegister();
+        MmsiSet fishingVessels = new MmsiSet();
+        processService.processMessages(Arrays.asList(getAisPositionMessage(), getAisPositionMessage()), fishingVessels);
+        Mockito.verify(exchangeService).sendToExchange(captor.capture(), Mockito.any());
+        assertThat(captor.getValue().size(), is(2));
+        assertThat(fishingVessels.size(), is(0));
+    }
+    
+    @Test
+    public void flagStateFilterTest() {
+        Mockito.when(startUp.getSetting("FILTER_FLAG_STATES")).thenReturn("DNK");
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType1Message(), getAisPositionMessage()), new MmsiSet());
+        Map<String, MovementBaseType> movements = result.getDownsampledMovements();
+        assertThat(movements.size(), is(1));
+        assertThat(movements.containsKey("219024194"), is(true));
+    }
+    
+    @Test
+    public void supersededPositionTest() {
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType1Message(), getAisPositionMessage(), getAisType1Message()), new MmsiSet());
+        Map<String, MovementBaseType> movements = result.getDownsampledMovements();
+        assertThat(movements.size(), is(2));
+        assertThat(movements.get("371798000").getMmsi(), is("371798000"));
+    }
+    
+    @Test
+    public void supersededByPositionNotAvailableTest() {
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisPositionMessage(), getAisPositionNotAvailableMessage()), new MmsiSet());
+        MovementBaseType movement = result.getDownsampledMovements().get("219024194");
+        assertThat(movement.getPosition().getLatitude(), is(57.490381666666664));
+        assertThat(movement.getPosition().getLongitude(), is(10.685565));
+    }
+    
+    @Test
+    public void flagStateFilterKeepsStaticReportsTest() {
+        Mockito.when(startUp.getSetting("FILTER_FLAG_STATES")).thenReturn("DNK");
+        MmsiSet fishingVessels = new MmsiSet();
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType5Message(), getAisType5FishingVessel()), fishingVessels);
+        assertThat(result.getDownsampledAssets().size(), is(2));
+        assertThat(fishingVessels.contains(261061000), is(true));
+    }
+    
+    @Test
+    public void parallelDecodeTest() {
+        Mockito.when(startUp.getSetting("PARALLEL_DECODE_THRESHOLD")).thenReturn("2");
+        Mockito.when(startUp.getSetting("PARALLEL_DECODE_CHUNK")).thenReturn("1");
+        Mockito.when(decodePool.getExecutor()).thenReturn(Executors.newFixedThreadPool(2));
+        MmsiSet fishingVessels = new MmsiSet();
+        fishingVessels.add(219024194);
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType1Message(), getAisPositionMessage(),
+                getAisType5Message(), getAisType2Message(), getAisPositionMessage(), getAisType1Message()), fishingVessels);
+        assertThat(result.getDownsampledMovements().size(), is(2));
+        assertThat(result.getDownsampledMovements().get("371798000").getPosition().getLatitude(), is(48.38163333333333));
+        assertThat(result.getDownsampledAssets().size(), is(1));
+        Mockito.verify(exchangeService).sendToExchange(captor.capture(), Mockito.any());
+        assertThat(captor.getValue().size(), is(2));
+    }
+    
+    @Test
+    public void parallelDecodeClassifiesBeforePositionsTest() {
+        Mockito.when(startUp.getSetting("PARALLEL_DECODE_THRESHOLD")).thenReturn("2");
+        Mockito.when(startUp.getSetting("PARALLEL_DECODE_CHUNK")).thenReturn("1");
+        Mockito.when(decodePool.getExecutor()).thenReturn(Executors.newFixedThreadPool(2));
+        MmsiSet fishingVessels = new MmsiSet();
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType19Message(), getAisType5FishingVessel367059850()), fishingVessels);
+        assertThat(fishingVessels.contains(367059850), is(true));
+        assertThat(result.getDownsampledMovements().size(), is(0));
+        Mockito.verify(exchangeService).sendToExchange(captor.capture(), Mockito.any());
+        assertThat(captor.getValue().size(), is(1));
+    }
+    
+    @Test
+    public void invalidCharacterTest() {
+        String sentence = "15RTgt0PAso;90TKcjM8h6g2!8CQ,0*4A";
+        ProcessResult result = processService.processMessages(Arrays.asList(sentence), new MmsiSet());
+        assertThat(result.getDownsampledMovements().size(), is(0));
+        Mockito.verify(parseErrorReporter).report(sentence, AisParser.Result.INVALID_CHARACTER);
+    }
+    
+    @Test
+    public void truncatedMessageTest() {
+        String sentence = "15RTgt0PAso;90TKcjM8,0*4A";
+        ProcessResult result = processService.processMessages(Arrays.asList(sentence), new MmsiSet());
+        assertThat(result.getDownsampledMovements().size(), is(0));
+        Mockito.verify(parseErrorReporter).report(sentence, AisParser.Result.TRUNCATED);
+    }
+    
+    @Test
+    public void emptyPayloadTest() {
+        String sentence = ",0*4A";
+        processService.processMessages(Arrays.asList(sentence), new MmsiSet());
+        Mockito.verify(parseErrorReporter).report(sentence, AisParser.Result.EMPTY);
+    }
+    
+    @Test
+    public void unsupportedTypeTest() {
+        String sentence = "85RTgt0PAso;90TKcjM8h6g208CQ,0*4A";
+        processService.processMessages(Arrays.asList(sentence), new MmsiSet());
+        Mockito.verify(parseErrorReporter).report(sentence, AisParser.Result.UNSUPPORTED_TYPE);
+    }
+    
+    @Test
+    public void type19FishingVesselTest() {
+        MmsiSet fishingVessels = new MmsiSet();
+        processService.processMessages(Arrays.asList(getAisType19FishingVessel()), fishingVessels);
+        assertThat(fishingVessels.contains(367059850), is(true));
+        Mockito.verify(exchangeService).sendToExchange(captor.capture(), Mockito.any());
+        assertThat(captor.getValue().size(), is(1));
+    }
+    
     @Test
     public void aisType24PartATest() {
-        ProcessResult result = processService.processMessages(Arrays.asList(getAisType24PartAMessage()), new HashSet<>());
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType24PartAMessage()), new MmsiSet());
         Map<String, AssetDTO> assetMap = result.getDownsampledAssets();
         assertThat(assetMap.size(), is(1));
         AssetDTO asset = assetMap.get("271041815");
@@ -165,13 +313,23 @@ public class ProcessServiceTest {
     
     @Test
     public void aisType24PartBTest() {
-        ProcessResult result = processService.processMessages(Arrays.asList(getAisType24PartBMessage()), new HashSet<>());
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType24PartBMessage()), new MmsiSet());
         Map<String, AssetDTO> assetMap = result.getDownsampledAssets();
         assertThat(assetMap.size(), is(1));
         AssetDTO asset = assetMap.get("271041815");
         assertThat(asset.getIrcs(), is("TC6163"));
     }
     
+    @Test
+    public void aisType24PartsMergedTest() {
+        ProcessResult result = processService.processMessages(Arrays.asList(getAisType24PartAMessage(), getAisType24PartBMessage()), new MmsiSet());
+        Map<String, AssetDTO> assetMap = result.getDownsampledAssets();
+        assertThat(assetMap.size(), is(1));
+        AssetDTO asset = assetMap.get("271041815");
+        assertThat(asset.getName(), is("PROGUY"));
+        assertThat(asset.getIrcs(), is("TC6163"));
+    }
+    
     /*
     MessageID:          1
     RepeatIndicator:    0
@@ -290,6 +448,33 @@ public class ProcessServiceTest {
         return "B52K>;h00Fc>jpUlNV@ikwpUoP06,0*4C";
     }
     
+    /*
+    MessageID:          19
+    UserID:             367059850
+    SOG:                8.7
+    longitude:          -88.81039166666666
+    latitude:           29.543695
+    COG:                335.9
+    TrueHeading:        511
+    name:               CAPT.J.RIMES
+    shipandcargo:       70
+     */
+    private String getAisType19Message() {
+        return "C5N3SRgPEnJGEBT>NhWAwwo862PaLELTBJ:V00000000S0D:R220,0*0B";
+    }
+    
+    /*
+    MessageID:          27
+    UserID:             206914217
+    longitude:          137.02333333333334
+    latitude:           4.84
+    SOG:                57
+    COG:                167
+     */
+    private String getAisType27Message() {
+        return "KC5E2b@U19PFdLbL,0*4A";
+    }
+    
     /*
     MessageID:         24
     RepeatIndicator:   0
@@ -318,11 +503,26 @@ public class ProcessServiceTest {
         return "H42O55lti4hhhilD3nink000?050,0*40";
     }
     
+    // type 19 message above with ship type 30 (fishing)
+    private String getAisType19FishingVessel() {
+        return "C5N3SRgPEnJGEBT>NhWAwwo862PaLELTBJ:V00000000?0D:R220,0*0B";
+    }
+    
     private String getAisType5FishingVessel() {
         return "5CpuqR029m2U<pLP00084i@T<40000000000000N1HN814lf0<1i6CR@@PC52@ii6CR@@00";
     }
 
+    // type 5 message above with the mmsi of the type 19 message
+    private String getAisType5FishingVessel367059850() {
+        return "5EN3SRP29m2U<pLP00084i@T<40000000000000N1HN814lf0<1i6CR@@PC52@ii6CR@@00";
+    }
+
     private String getAisPositionMessage() {
         return "13@p;@P0020hrRFPqG5EQUHHP00,0*5C";
     }
+
+    // same vessel as above with longitude 181 and latitude 91, position not available
+    private String getAisPositionNotAvailableMessage() {
+        return "13@p;@P002<tSF0l4Q@5QUHHP00,0*5C";
+    }
 }
@@ -0,0 +1,171 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementBaseType;
+import eu.europa.ec.fisheries.schema.exchange.movement.v1.MovementPoint;
+
+public class ResendSpoolTest {
+
+    private static final int SEGMENT_BYTES = 2048;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appendAndReplayTest() throws Exception {
+        ResendSpool spool = new ResendSpool(folder.getRoot().toPath(), SEGMENT_BYTES, 1 << 20);
+        MovementBaseType movement = movement("261061000");
+        movement.setReportedSpeed(11.5);
+        movement.setPositionTime(new Date(1500000000000L));
+        MovementPoint point = new MovementPoint();
+        point.setLatitude(57.7);
+        point.setLongitude(11.9);
+        movement.setPosition(point);
+        spool.append(movement);
+        spool.append(movement("219024194"));
+
+        ResendSpool.Replay replay = spool.next(10);
+        assertThat(replay.getMovements().size(), is(2));
+        MovementBaseType replayed = replay.getMovements().get(0);
+        assertThat(replayed.getMmsi(), is("261061000"));
+        assertThat(replayed.getReportedSpeed(), is(11.5));
+        assertThat(replayed.getPositionTime(), is(new Date(1500000000000L)));
+        assertThat(replayed.getPosition().getLatitude(), is(57.7));
+        assertThat(replayed.getPosition().getLongitude(), is(11.9));
+        assertThat(replay.getMovements().get(1).getMmsi(), is("219024194"));
+
+        // not acknowledged yet, so they are replayed again
+        assertThat(spool.next(10).getMovements().size(), is(2));
+        spool.acknowledge(replay);
+        assertThat(spool.getPending(), is(0L));
+        assertThat(spool.next(10).isEmpty(), is(true));
+        spool.close();
+    }
+
+    @Test
+    public void acknowledgedSegmentsAreDeletedTest() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ResendSpool spool = new ResendSpool(directory, SEGMENT_BYTES, 1 << 20);
+        for (int i = 0; i < 200; i++) {
+            spool.append(movement(String.valueOf(100000000 + i)));
+        }
+        int segments = segmentFiles(directory).size();
+        assertThat(segments > 1, is(true));
+
+        ResendSpool.Replay replay = spool.next(1000);
+        spool.acknowledge(replay);
+        assertThat(segmentFiles(directory).size(), is(segments - 1));
+        assertThat(spool.getPending(), is(200L - replay.getMovements().size()));
+        spool.close();
+    }
+
+    @Test
+    public void partialAcknowledgeKeepsUnattemptedMovementsTest() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ResendSpool spool = new ResendSpool(directory, SEGMENT_BYTES, 1 << 20);
+        for (int i = 0; i < 5; i++) {
+            spool.append(movement(String.valueOf(100000000 + i)));
+        }
+        long size = spool.getSizeBytes();
+
+        spool.acknowledge(spool.next(10), 0);
+        assertThat(spool.getPending(), is(5L));
+        spool.acknowledge(spool.next(10), 2);
+        assertThat(spool.getPending(), is(3L));
+        assertThat(spool.getSizeBytes(), is(size));
+        spool.close();
+
+        ResendSpool reopened = new ResendSpool(directory, SEGMENT_BYTES, 1 << 20);
+        List<MovementBaseType> movements = reopened.next(10).getMovements();
+        assertThat(movements.size(), is(3));
+        assertThat(movements.get(0).getMmsi(), is("100000002"));
+        reopened.close();
+    }
+
+    @Test
+    public void reopenRestoresPendingMovementsTest() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ResendSpool spool = new ResendSpool(directory, SEGMENT_BYTES, 1 << 20);
+        for (int i = 0; i < 5; i++) {
+            spool.append(movement(String.valueOf(100000000 + i)));
+        }
+        spool.acknowledge(spool.next(2));
+        spool.close();
+
+        ResendSpool reopened = new ResendSpool(directory, SEGMENT_BYTES, 1 << 20);
+        assertThat(reopened.getPending(), is(3L));
+        List<MovementBaseType> movements = reopened.next(10).getMovements();
+        assertThat(movements.size(), is(3));
+        assertThat(movements.get(0).getMmsi(), is("100000002"));
+        reopened.append(movement("100000005"));
+        assertThat(reopened.getPending(), is(4L));
+        reopened.close();
+    }
+
+    @Test
+    public void tornRecordIsIgnoredOnReopenTest() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ResendSpool spool = new ResendSpool(directory, SEGMENT_BYTES, 1 << 20);
+        spool.append(movement("261061000"));
+        spool.append(movement("219024194"));
+        spool.close();
+
+        Path segment = segmentFiles(directory).get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // corrupt the last byte of the second record
+            int first = 16 + 8 + readInt(file, 16);
+            int second = first + 8 + readInt(file, first);
+            file.seek(second - 1);
+            int last = file.read();
+            file.seek(second - 1);
+            file.write(last ^ 0xFF);
+        }
+
+        ResendSpool reopened = new ResendSpool(directory, SEGMENT_BYTES, 1 << 20);
+        assertThat(reopened.getPending(), is(1L));
+        assertThat(reopened.next(10).getMovements().get(0).getMmsi(), is("261061000"));
+        reopened.close();
+    }
+
+    @Test
+    public void oldestSegmentIsDroppedWhenFullTest() throws Exception {
+        ResendSpool spool = new ResendSpool(folder.getRoot().toPath(), SEGMENT_BYTES, 2 * SEGMENT_BYTES);
+        for (int i = 0; i < 500; i++) {
+            spool.append(movement(String.valueOf(100000000 + i)));
+        }
+        assertThat(spool.getSizeBytes() <= 2 * SEGMENT_BYTES, is(true));
+        assertThat(spool.getDropped() > 0, is(true));
+        assertThat(spool.getPending() + spool.getDropped(), is(500L));
+        List<MovementBaseType> movements = spool.next(1000).getMovements();
+        assertThat(movements.get(0).getMmsi().equals("100000000"), is(false));
+        spool.close();
+    }
+
+    private static int readInt(RandomAccessFile file, long position) throws Exception {
+        file.seek(position);
+        return file.readInt();
+    }
+
+    private static List<Path> segmentFiles(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".seg")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static MovementBaseType movement(String mmsi) {
+        MovementBaseType movement = new MovementBaseType();
+        movement.setMmsi(mmsi);
+        return movement;
+    }
+}
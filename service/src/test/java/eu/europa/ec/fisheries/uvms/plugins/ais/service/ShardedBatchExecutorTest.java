@@ -0,0 +1,66 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+
+public class ShardedBatchExecutorTest {
+
+    private static final String VESSEL_A = "15RTgt0PAso;90TKcjM8h6g208CQ,0*4A";
+    private static final String VESSEL_B = "13@p;@P0020hrRFPqG5EQUHHP00,0*5C";
+
+    private final List<List<String>> started = new ArrayList<>();
+    private final List<CompletableFuture<Void>> running = new ArrayList<>();
+
+    private final ShardedBatchExecutor executor = new ShardedBatchExecutor(sentences -> {
+        started.add(sentences);
+        CompletableFuture<Void> batch = new CompletableFuture<>();
+        running.add(batch);
+        return batch;
+    }, 2, 100);
+
+    @Test
+    public void sameVesselSameLaneTest() {
+        int lane = ShardedBatchExecutor.laneFor(371798000, 8);
+        for (int i = 0; i < 10; i++) {
+            assertThat(ShardedBatchExecutor.laneFor(371798000, 8), is(lane));
+        }
+        assertThat(ShardedBatchExecutor.laneFor(-1, 8), is(0));
+    }
+
+    @Test
+    public void vesselBatchesRunInOrderTest() {
+        executor.submit(Arrays.asList(VESSEL_A, VESSEL_B));
+        int startedLanes = started.size();
+        executor.submit(Arrays.asList(VESSEL_A));
+        executor.submit(Arrays.asList(VESSEL_A));
+        assertThat(started.size(), is(startedLanes));
+        assertThat(executor.getPending(), is(2));
+
+        List<String> firstBatchOfA = started.get(0).contains(VESSEL_A) ? started.get(0) : started.get(1);
+        running.get(started.indexOf(firstBatchOfA)).complete(null);
+        assertThat(started.get(started.size() - 1), is(Arrays.asList(VESSEL_A, VESSEL_A)));
+        assertThat(executor.getPending(), is(0));
+    }
+
+    @Test
+    public void discardedPendingSentencesAreCountedTest() {
+        executor.submit(Arrays.asList(VESSEL_A, VESSEL_B));
+        executor.submit(Arrays.asList(VESSEL_A, VESSEL_B, VESSEL_B));
+        assertThat(executor.getPending(), is(3));
+
+        assertThat(executor.discardPending(), is(3));
+        assertThat(executor.getPending(), is(0));
+        assertThat(executor.getDropped(), is(3L));
+
+        for (CompletableFuture<Void> batch : new ArrayList<>(running)) {
+            batch.complete(null);
+        }
+        assertThat(started.size(), is(running.size()));
+        assertThat(executor.getInFlight(), is(0));
+    }
+}
@@ -0,0 +1,51 @@
+package eu.europa.ec.fisheries.uvms.plugins.ais.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import org.junit.Test;
+
+public class StreamingIngestTest {
+
+    private final Deque<List<String>> polls = new ArrayDeque<>();
+    private final List<List<String>> batches = new ArrayList<>();
+    private final StreamingIngest ingest = new StreamingIngest(
+            () -> polls.isEmpty() ? Collections.emptyList() : polls.poll(), batches::add, 3, 500, 10);
+
+    @Test
+    public void fullBatchesAreHandedOnTest() {
+        polls.add(Arrays.asList("1", "2", "3", "4", "5", "6", "7"));
+        assertThat(ingest.drain(0), is(true));
+        assertThat(batches.size(), is(2));
+        assertThat(batches.get(0), is(Arrays.asList("1", "2", "3")));
+        assertThat(batches.get(1), is(Arrays.asList("4", "5", "6")));
+    }
+
+    @Test
+    public void lingeringBatchIsHandedOnTest() {
+        polls.add(Arrays.asList("1"));
+        ingest.drain(0);
+        assertThat(ingest.drain(499), is(false));
+        assertThat(batches.size(), is(0));
+        ingest.drain(500);
+        assertThat(batches.size(), is(1));
+        assertThat(batches.get(0), is(Arrays.asList("1")));
+    }
+
+    @Test
+    public void remainingSentencesAreHandedOnWhenStoppedTest() throws Exception {
+        polls.add(Arrays.asList("1", "2"));
+        Thread thread = new Thread(ingest);
+        thread.start();
+        Thread.sleep(50);
+        ingest.stop();
+        thread.join(1000);
+        assertThat(batches.size(), is(1));
+        assertThat(batches.get(0), is(Arrays.asList("1", "2")));
+    }
+}